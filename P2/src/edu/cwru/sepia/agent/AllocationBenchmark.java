@@ -0,0 +1,71 @@
+package edu.cwru.sepia.agent;
+
+import edu.cwru.sepia.action.Action;
+import edu.cwru.sepia.environment.model.history.History.HistoryView;
+import edu.cwru.sepia.environment.model.state.State.StateView;
+
+import java.util.Map;
+
+/**
+ * Allocation benchmark of the steady-state turn loop of {@link AstarAgent}.
+ * Run it in place of AstarAgent with any P2 configuration; it plays the
+ * same game, but every turn SEPIA asks for is played {@code repeat} times on
+ * the same state, so that a short game yields enough turns for the JIT to
+ * settle and the count to be stable. The footman does not move between the
+ * repeats, so each of them issues the same move as the turn it repeats.
+ * <p>
+ * The {@link AstarAgent.AllocationProbe} is on and the event log is written
+ * at INFO unless the parameters say otherwise. The TERMINAL event of the log
+ * holds the result: {@code allocatedBytes} over {@code allocationTurns}
+ * turns that did not plan. Takes the parameters of AstarAgent and:
+ * <ul>
+ * <li>{@code repeat=<n>} times each turn is played (default 1000)</li>
+ * </ul>
+ *
+ * @author Ryan Tatton
+ * @since P2
+ */
+public class AllocationBenchmark extends AstarAgent
+{
+    private static final String[] DEFAULTS = {"log=info", "allocations=true"};
+
+    private final int repeat;
+
+    public AllocationBenchmark(int playernum)
+    {
+        this(playernum, new String[0]);
+    }
+
+    public AllocationBenchmark(int playernum, String[] params)
+    {
+        super(playernum, withDefaults(params));
+        int times = 1000;
+        for (String param : params)
+            if (param.startsWith("repeat="))
+                times = Integer.parseInt(param.substring(7).trim());
+        this.repeat = Math.max(1, times);
+    }
+
+    // Later parameters override earlier ones
+    private static String[] withDefaults(String[] params)
+    {
+        String[] all = new String[DEFAULTS.length + params.length];
+        System.arraycopy(DEFAULTS, 0, all, 0, DEFAULTS.length);
+        System.arraycopy(params, 0, all, DEFAULTS.length, params.length);
+        return all;
+    }
+
+    @Override
+    public Map<Integer, Action> middleStep(StateView state, HistoryView history)
+    {
+        Map<Integer, Action> actions = super.middleStep(state, history);
+        for (int i = 1; i < repeat && !isTerminated(); i++)
+            actions = super.middleStep(state, history);
+        return actions;
+    }
+
+    public int getRepeat()
+    {
+        return repeat;
+    }
+}
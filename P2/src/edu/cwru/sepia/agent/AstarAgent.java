@@ -7,13 +7,17 @@ import edu.cwru.sepia.environment.model.state.State.StateView;
 import edu.cwru.sepia.environment.model.state.Unit.UnitView;
 import edu.cwru.sepia.util.Direction;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.util.*;
 
 public class AstarAgent extends Agent
 {
     private static final int NOT_FOUND = -1;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final Direction[] DIRECTION_TABLE = directionTable();
     private Stack<Location> path;
     private int footmanID;
     private int townhallID;
@@ -22,6 +26,22 @@ public class AstarAgent extends Agent
     private long totalPlanTime = 0; // nsecs
     private long currentPlanTime = 0;
     private long totalExecutionTime = 0; //nsecs
+    private EventLog eventLog;
+    private final ActionMap actionMap = createActionMap();
+    private AllocationProbe allocationProbe;
+    private Integer footmanKey;
+    private Action[] footmanMoves;
+    private Action footmanAttack;
+    private Planner planner;
+    private OccupancyGrid occupancyGrid;
+    private GridAstar flatSearch;
+    private SubgoalGraph subgoalGraph;
+    private BoundedAstar boundedSearch;
+    private long memoryBudget;
+    private boolean pruning;
+    private PruningMap pruningMap;
+    private int planningTurn;
+    private boolean terminated;
 
     /**
      * Wrapper to store instances of SEPIA Actions. An ActionMap maintains the
@@ -55,6 +75,23 @@ public class AstarAgent extends Agent
                 getMap().put(action.getUnitId(), action);
         }
 
+        /**
+         * Assigns an {@link Action} without boxing the unit id. Replacing the
+         * action of a unit that already has one does not allocate.
+         *
+         * @param unit   Boxed id of the unit the action is assigned to.
+         * @param action {@link Action} to assign.
+         */
+        public void assign(Integer unit, Action action)
+        {
+            getMap().put(unit, action);
+        }
+
+        public void clear()
+        {
+            getMap().clear();
+        }
+
         public void attackTownhall(int attacker, int townhall)
         {
             this.assignPrimitiveAttack(attacker, townhall);
@@ -202,12 +239,87 @@ public class AstarAgent extends Agent
     }
 
     public AstarAgent(int playernum)
+    {
+        this(playernum, new String[0]);
+    }
+
+    /**
+     * Optional parameters are given as {@code key=value} pairs:
+     * <ul>
+     * <li>{@code log=off|info|debug} level of the event log (default off)</li>
+     * <li>{@code logFile=<path>} NDJSON file the event log is written to
+     * (default saves/astar-events.ndjson)</li>
+     * <li>{@code planner=flat|subgoal|benchmark|bounded} path planner (default
+     * flat); see {@link Planner}</li>
+     * <li>{@code prune=true|false} skip dead ends and swamps during flat
+     * search (default true); see {@link PruningMap}</li>
+     * <li>{@code memory=<bytes>} budget of the bounded planner, with an
+     * optional k, m or g suffix (default 1m); see {@link BoundedAstar}</li>
+     * <li>{@code allocations=true|false} measure the bytes allocated by the
+     * turns that do not plan and report them in the TERMINAL event (default
+     * false); see {@link AllocationProbe}</li>
+     * </ul>
+     *
+     * @param playernum Player number of this agent.
+     * @param params    Optional {@code key=value} parameters.
+     */
+    public AstarAgent(int playernum, String[] params)
     {
         super(playernum);
+        Map<String, String> options = parseOptions(params);
+        EventLog.Level level = EventLog.Level.valueOf(
+                options.getOrDefault("log", "off").toUpperCase());
+        File logFile = new File(options.getOrDefault("logFile",
+                                                     "saves/astar-events.ndjson"));
+        setEventLog(new EventLog(level, logFile));
+        setPlanner(Planner.valueOf(
+                options.getOrDefault("planner", "flat").toUpperCase()));
+        setPruning(Boolean.parseBoolean(
+                options.getOrDefault("prune", "true")));
+        setMemoryBudget(options.containsKey("memory")
+                        ? parseBytes(options.get("memory"))
+                        : BoundedAstar.DEFAULT_MEMORY);
+        if (Boolean.parseBoolean(options.getOrDefault("allocations", "false")))
+            setAllocationProbe(new AllocationProbe());
 
         System.out.println("Constructed AstarAgent");
     }
 
+    private static Map<String, String> parseOptions(String[] params)
+    {
+        Map<String, String> options = new HashMap<>();
+        for (String param : params)
+        {
+            String[] keyValue = param.split("=", 2);
+            if (keyValue.length == 2)
+                options.put(keyValue[0].trim(), keyValue[1].trim());
+            else
+                System.err.println("Ignoring malformed parameter: " + param);
+        }
+        return options;
+    }
+
+    private static long parseBytes(String value)
+    {
+        String digits = value.toLowerCase();
+        long unit = 1;
+        switch (digits.charAt(digits.length() - 1))
+        {
+            case 'k':
+                unit = 1L << 10;
+                break;
+            case 'm':
+                unit = 1L << 20;
+                break;
+            case 'g':
+                unit = 1L << 30;
+                break;
+        }
+        if (unit != 1)
+            digits = digits.substring(0, digits.length() - 1);
+        return Long.parseLong(digits.trim()) * unit;
+    }
+
     @Override
     public Map<Integer, Action> initialStep(StateView state,
                                             HistoryView history)
@@ -246,10 +358,13 @@ public class AstarAgent extends Agent
             System.err.println("Error: Couldn't find townhall");
             return null;
         }
+        cacheFootmanActions();
 
         long startTime = System.nanoTime();
         setPath(findPath(state));
-        updateTotalPlanTime(System.nanoTime() - startTime);
+        long planTime = System.nanoTime() - startTime;
+        updateTotalPlanTime(planTime);
+        logPlan(state, planTime);
 
         return middleStep(state, history);
     }
@@ -288,6 +403,22 @@ public class AstarAgent extends Agent
 
     }
 
+    /**
+     * Primitive SEPIA actions are immutable, so every action the footman can
+     * take is created once and reused by {@link #middleStep}.
+     */
+    private void cacheFootmanActions()
+    {
+        setFootmanKey(getFootmanID());
+        Action[] moves = new Action[DIRECTIONS.length];
+        for (Direction direction : DIRECTIONS)
+            moves[direction.ordinal()] =
+                    Action.createPrimitiveMove(getFootmanID(), direction);
+        setFootmanMoves(moves);
+        setFootmanAttack(Action.createPrimitiveAttack(getFootmanID(),
+                                                      getTownhallID()));
+    }
+
     public boolean isFootman(StateView state)
     {
         return Units.FOOTMAN.equals(getFootman(state));
@@ -307,60 +438,85 @@ public class AstarAgent extends Agent
     public Map<Integer, Action> middleStep(StateView state, HistoryView history)
     {
         long startTime = System.nanoTime();
+        long startAllocated = isProbingAllocations()
+                              ? getAllocationProbe().allocatedBytes()
+                              : 0;
         resetCurrentPlanTime();
 
-        ActionMap actionMap = createActionMap();
-
         if (shouldReplanPath(state, history, getPath()))
             timeAndUpdatePathReplan(state);
 
-        Location footmanLoc = locate(getFootman(state));
+        UnitView footman = getFootman(state);
+        int footmanX = footman.getXPosition();
+        int footmanY = footman.getYPosition();
 
-        if (pathExists() && nextLocExists() && footmanNotAtNextLoc(footmanLoc))
+        if (pathExists() && (!nextLocExists() || isAtNextLoc(footmanX, footmanY)))
         {
             // start moving to the next step in the path
             setNextLoc(getPath().pop());
-            int xLoc = getNextLoc().getX();
-            int yLoc = getNextLoc().getY();
-            System.out.println("Moving to (" + xLoc + ", " + yLoc + ")");
+            getEventLog().log(EventLog.Event.MOVE,
+                              state.getTurnNumber(),
+                              getNextLoc().getX(),
+                              getNextLoc().getY());
         }
 
-        //
-        if (nextLocExists() && footmanNotAtNextLoc(footmanLoc))
+        if (nextLocExists() && !isAtNextLoc(footmanX, footmanY))
         {
-            Location diff = getNextLoc().minus(footmanLoc);
-            Direction nextDir = getNextDirection(diff.getX(), diff.getY());
-            actionMap.move(getFootmanID(), nextDir);
+            int xDiff = getNextLoc().getX() - footmanX;
+            int yDiff = getNextLoc().getY() - footmanY;
+            Direction nextDir = getNextDirection(xDiff, yDiff);
+            if (isNull(nextDir))
+                getActionMap().clear();
+            else
+                getActionMap().assign(getFootmanKey(),
+                                      getFootmanMoves()[nextDir.ordinal()]);
         } else
         {
             UnitView townHall = getTownhall(state);
             if (townHallWasDestroyed(townHall))
             {
+                getActionMap().clear();
                 terminalStep(state, history);
-                return actionMap.getMap();
+                return getActionMap().getMap();
             }
-            if (isTooFarFromTownhall(footmanLoc, locate(townHall)))
+            if (isTooFarFromTownhall(footmanX,
+                                     footmanY,
+                                     townHall.getXPosition(),
+                                     townHall.getYPosition()))
             {
                 System.err.println("Invalid plan. Cannot attack townhall");
+                getEventLog().log(EventLog.Event.INVALID_PLAN,
+                                  state.getTurnNumber(),
+                                  footmanX,
+                                  footmanY);
+                getActionMap().clear();
                 long diffFromStart = System.nanoTime() - startTime;
                 long diffFromCurrent = diffFromStart - getCurrentPlanTime();
                 updateTotalExecutionTime(diffFromCurrent);
-                return actionMap.getMap();
+                return getActionMap().getMap();
             } else
             {
-                System.out.println("Attacking TownHall");
-                actionMap.attackTownhall(getFootmanID(), getTownhallID());
+                getEventLog().log(EventLog.Event.ATTACK,
+                                  state.getTurnNumber(),
+                                  getFootmanID(),
+                                  getTownhallID());
+                getActionMap().assign(getFootmanKey(), getFootmanAttack());
             }
         }
         long diffFromStart = System.nanoTime() - startTime;
         updateTotalExecutionTime(diffFromStart - getCurrentPlanTime());
-        return actionMap.getMap();
+        if (isProbingAllocations() && getCurrentPlanTime() == 0)
+            getAllocationProbe().record(startAllocated);
+        return getActionMap().getMap();
     }
 
-    public boolean isTooFarFromTownhall(Location footman, Location townhall)
+    public boolean isTooFarFromTownhall(int footmanX,
+                                        int footmanY,
+                                        int townhallX,
+                                        int townhallY)
     {
-        Location absoluteDiff = footman.absMinus(townhall);
-        return absoluteDiff.getX() > 1 || absoluteDiff.getY() > 1;
+        return Math.abs(footmanX - townhallX) > 1
+                || Math.abs(footmanY - townhallY) > 1;
     }
 
     public boolean townHallWasDestroyed(UnitView townHall)
@@ -375,30 +531,73 @@ public class AstarAgent extends Agent
         setPath(findPath(state));
         setCurrentPlanTime(System.nanoTime() - planStartTime);
         updateTotalPlanTime(getCurrentPlanTime());
+        logPlan(state, getCurrentPlanTime());
+    }
+
+    /**
+     * Records a planning episode with everything needed to replay it: where
+     * the footman started, the goal, the enemy footman, and the outcome.
+     */
+    private void logPlan(StateView state, long planTime)
+    {
+        if (!getEventLog().isEnabled(EventLog.Event.PLAN))
+            return;
+        UnitView footman = getFootman(state);
+        UnitView townhall = getTownhall(state);
+        UnitView enemy = getEnemyFootmanID() == NOT_FOUND
+                         ? null
+                         : getEnemyFootman(state);
+        getEventLog().log(EventLog.Event.PLAN,
+                          state.getTurnNumber(),
+                          footman.getXPosition(),
+                          footman.getYPosition(),
+                          townhall.getXPosition(),
+                          townhall.getYPosition(),
+                          isNull(enemy) ? NOT_FOUND : enemy.getXPosition(),
+                          isNull(enemy) ? NOT_FOUND : enemy.getYPosition(),
+                          isNull(getPath()) ? NOT_FOUND : getPath().size(),
+                          planTime);
     }
 
     public boolean pathExists()
     {
-        return !getPath().isEmpty();
+        return !isNull(getPath()) && !getPath().isEmpty();
     }
 
     public boolean nextLocExists()
     {
-        return isNull(getNextLoc());
+        return !isNull(getNextLoc());
     }
 
-    public boolean footmanNotAtNextLoc(Location footmanLoc)
+    public boolean isAtNextLoc(int footmanX, int footmanY)
     {
-        return footmanLoc.equals(getNextLoc());
+        return getNextLoc().getX() == footmanX
+                && getNextLoc().getY() == footmanY;
     }
 
     @Override
     public void terminalStep(StateView state, HistoryView history)
     {
+        // middleStep ends the episode when the town hall falls, and SEPIA
+        // calls this again afterwards
+        if (isTerminated())
+            return;
+        setTerminated(true);
         System.out.println("Total turns: " + state.getTurnNumber());
         System.out.println("Total planning time: " + totalPlanTime / 1e9);
         System.out.println("Total execution time: " + totalExecutionTime / 1e9);
         System.out.println("Total time: " + (totalExecutionTime + totalPlanTime) / 1e9);
+        getEventLog().log(EventLog.Event.TERMINAL,
+                          state.getTurnNumber(),
+                          totalPlanTime,
+                          totalExecutionTime,
+                          isProbingAllocations()
+                          ? getAllocationProbe().getBytes()
+                          : NOT_FOUND,
+                          isProbingAllocations()
+                          ? getAllocationProbe().getTurns()
+                          : NOT_FOUND);
+        getEventLog().close();
     }
 
     @Override
@@ -451,7 +650,8 @@ public class AstarAgent extends Agent
     private Stack<Location> findPath(StateView state)
     {
         Location footmanLoc = null;
-        if (!isNull(getEnemyFootmanID() != NOT_FOUND))
+        if (getEnemyFootmanID() != NOT_FOUND
+                && !isNull(getEnemyFootman(state)))
             footmanLoc = locate(getEnemyFootman(state));
 
         List<Integer> resourceIDs = state.getAllResourceIds();
@@ -462,6 +662,7 @@ public class AstarAgent extends Agent
 
         Location startLoc = locate(getFootman(state));
         Location goalLoc = locate(getTownhall(state));
+        setPlanningTurn(state.getTurnNumber());
 
         return AstarSearch(
                 startLoc,
@@ -527,7 +728,6 @@ public class AstarAgent extends Agent
      * @param resourceLocations Set of positions occupied by resources
      * @return Stack of positions with top of stack being first move in plan
      */
-    // TODO Implement A*
     private Stack<Location> AstarSearch(Location start,
                                         Location goal,
                                         int xExtent,
@@ -535,8 +735,149 @@ public class AstarAgent extends Agent
                                         Location enemyFootmanLoc,
                                         Set<Location> resourceLocations)
     {
-        // return an empty path
-        return new Stack<Location>();
+        updateOccupancyGrid(xExtent, yExtent, resourceLocations);
+        OccupancyGrid grid = getOccupancyGrid();
+        int startCell = grid.index(start.getX(), start.getY());
+        int goalCell = grid.index(goal.getX(), goal.getY());
+        int enemyCell = isNull(enemyFootmanLoc)
+                        ? NOT_FOUND
+                        : grid.index(enemyFootmanLoc.getX(),
+                                     enemyFootmanLoc.getY());
+        if (isPruning() && getPlanner() != Planner.BOUNDED)
+            updatePruningMap(goalCell);
+
+        int[] cells;
+        switch (getPlanner())
+        {
+            case SUBGOAL:
+                cells = getSubgoalGraph().query(startCell, goalCell, enemyCell);
+                if (isNull(cells))
+                    cells = getFlatSearch().search(startCell,
+                                                   goalCell,
+                                                   enemyCell);
+                break;
+            case BENCHMARK:
+                cells = benchmark(startCell, goalCell, enemyCell);
+                break;
+            case BOUNDED:
+                cells = bounded(startCell, goalCell, enemyCell);
+                break;
+            default:
+                cells = getFlatSearch().search(startCell, goalCell, enemyCell);
+        }
+        if (isNull(cells))
+        {
+            System.err.println("No available path to the townhall");
+            return null;
+        }
+        Stack<Location> path = new Stack<>();
+        for (int i = cells.length - 1; i >= 0; i--)
+            path.push(locate(grid.x(cells[i]), grid.y(cells[i])));
+        return path;
+    }
+
+    /*
+     * Runs both planners on the same query and logs their latencies. The
+     * subgoal graph is built outside of the timed query, as it is built once
+     * per map.
+     */
+    private int[] benchmark(int startCell, int goalCell, int enemyCell)
+    {
+        SubgoalGraph graph = getSubgoalGraph();
+        long flatStart = System.nanoTime();
+        int[] flat = getFlatSearch().search(startCell, goalCell, enemyCell);
+        long flatTime = System.nanoTime() - flatStart;
+        long subgoalStart = System.nanoTime();
+        int[] subgoal = graph.query(startCell, goalCell, enemyCell);
+        long subgoalTime = System.nanoTime() - subgoalStart;
+        getEventLog().log(EventLog.Event.PLAN_BENCHMARK,
+                          getPlanningTurn(),
+                          flatTime,
+                          subgoalTime,
+                          isNull(flat) ? NOT_FOUND : flat.length,
+                          isNull(subgoal) ? NOT_FOUND : subgoal.length,
+                          getFlatSearch().getExpansions(),
+                          graph.getExpansions(),
+                          graph.getSubgoalCount(),
+                          graph.getEdgeCount());
+        return isNull(subgoal) ? flat : subgoal;
+    }
+
+    /*
+     * Runs the memory-bounded planner and logs how far its path may be from
+     * optimal.
+     */
+    private int[] bounded(int startCell, int goalCell, int enemyCell)
+    {
+        BoundedAstar search = getBoundedSearch();
+        int[] cells = search.search(startCell, goalCell, enemyCell);
+        getEventLog().log(EventLog.Event.PLAN_BOUNDED,
+                          getPlanningTurn(),
+                          isNull(cells) ? NOT_FOUND : cells.length,
+                          search.getLowerBound(),
+                          search.getWeight(),
+                          search.getExpansions(),
+                          search.getMemory(),
+                          search.isExhausted() ? 1 : 0);
+        return cells;
+    }
+
+    /*
+     * Trees only disappear, so the grid is rebuilt from the resource
+     * locations on every query but the searches built on top of it are only
+     * replaced when it actually changed.
+     */
+    private void updateOccupancyGrid(int xExtent,
+                                     int yExtent,
+                                     Set<Location> resourceLocations)
+    {
+        OccupancyGrid grid = new OccupancyGrid(xExtent, yExtent);
+        for (Location resource : resourceLocations)
+            grid.block(resource.getX(), resource.getY());
+        if (grid.equals(getOccupancyGrid()))
+            return;
+        setOccupancyGrid(grid);
+        setFlatSearch(null);
+        setSubgoalGraph(null);
+        setBoundedSearch(null);
+        setPruningMap(null);
+    }
+
+    /*
+     * The pruning map depends on the grid and the town hall, so it is
+     * rebuilt whenever a tree is harvested or the town hall changes.
+     */
+    private void updatePruningMap(int goalCell)
+    {
+        if (!isNull(getPruningMap()) && getPruningMap().getTarget() == goalCell)
+            return;
+        setPruningMap(new PruningMap(getOccupancyGrid(), goalCell));
+        getFlatSearch().setPruning(getPruningMap());
+    }
+
+    public BoundedAstar getBoundedSearch()
+    {
+        if (isNull(boundedSearch))
+            setBoundedSearch(new BoundedAstar(getOccupancyGrid(),
+                                              getMemoryBudget()));
+        return boundedSearch;
+    }
+
+    public void setBoundedSearch(BoundedAstar boundedSearch)
+    {
+        this.boundedSearch = boundedSearch;
+    }
+
+    public SubgoalGraph getSubgoalGraph()
+    {
+        if (isNull(subgoalGraph))
+            setSubgoalGraph(new SubgoalGraph(getOccupancyGrid()));
+        return subgoalGraph;
+    }
+
+    public void setSubgoalGraph(SubgoalGraph subgoalGraph)
+    {
+        this.subgoalGraph = subgoalGraph;
     }
 
     /**
@@ -552,36 +893,103 @@ public class AstarAgent extends Agent
      */
     private Direction getNextDirection(int xDiff, int yDiff)
     {
+        Direction direction = null;
+        if (Math.abs(xDiff) <= 1 && Math.abs(yDiff) <= 1)
+            direction = DIRECTION_TABLE[directionIndex(xDiff, yDiff)];
+        if (isNull(direction))
+            System.err.println("Invalid path. Could not determine direction");
+        return direction;
+    }
 
-        // figure out the direction the footman needs to move in
-        if (xDiff == 1 && yDiff == 1)
-        {
-            return Direction.SOUTHEAST;
-        } else if (xDiff == 1 && yDiff == 0)
-        {
-            return Direction.EAST;
-        } else if (xDiff == 1 && yDiff == -1)
+    // Row-major 3x3 table of the unit offsets; the center entry is null.
+    private static Direction[] directionTable()
+    {
+        Direction[] table = new Direction[9];
+        for (Direction direction : Direction.values())
+            table[directionIndex(direction.xComponent(),
+                                 direction.yComponent())] = direction;
+        return table;
+    }
+
+    private static int directionIndex(int xDiff, int yDiff)
+    {
+        return (yDiff + 1) * 3 + xDiff + 1;
+    }
+
+    /**
+     * Measures the bytes the agent thread allocates during turns that do not
+     * replan, to verify the steady-state turn loop produces no garbage. Only
+     * created when the {@code allocations} option is set, so a normal game
+     * never reads the counter. Relies on the HotSpot extension of {@link
+     * java.lang.management.ThreadMXBean}; if that is unavailable the probe
+     * counts no turns.
+     */
+    class AllocationProbe
+    {
+        private final com.sun.management.ThreadMXBean threads;
+        private long bytes;
+        private long turns;
+
+        private AllocationProbe()
         {
-            return Direction.NORTHEAST;
-        } else if (xDiff == 0 && yDiff == 1)
+            java.lang.management.ThreadMXBean bean =
+                    ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) bean)
+                    .isThreadAllocatedMemorySupported())
+                this.threads = (com.sun.management.ThreadMXBean) bean;
+            else
+                this.threads = null;
+        }
+
+        public boolean isSupported()
         {
-            return Direction.SOUTH;
-        } else if (xDiff == 0 && yDiff == -1)
+            return !isNull(threads);
+        }
+
+        public long allocatedBytes()
         {
-            return Direction.NORTH;
-        } else if (xDiff == -1 && yDiff == 1)
+            if (!isSupported())
+                return 0;
+            return threads.getThreadAllocatedBytes(Thread.currentThread()
+                                                         .getId());
+        }
+
+        public void record(long startAllocated)
         {
-            return Direction.SOUTHWEST;
-        } else if (xDiff == -1 && yDiff == 0)
+            if (!isSupported())
+                return;
+            bytes += allocatedBytes() - startAllocated;
+            turns++;
+        }
+
+        public long getBytes()
         {
-            return Direction.WEST;
-        } else if (xDiff == -1 && yDiff == -1)
+            return bytes;
+        }
+
+        public long getTurns()
         {
-            return Direction.NORTHWEST;
+            return turns;
         }
+    }
 
-        System.err.println("Invalid path. Could not determine direction");
-        return null;
+    /**
+     * Path planners the agent can use.
+     * <ul>
+     * <li>FLAT: A* over the whole grid.</li>
+     * <li>SUBGOAL: A* over a {@link SubgoalGraph} built once per map,
+     * falling back to FLAT when the graph does not connect the query.</li>
+     * <li>BENCHMARK: runs both on every query, logs their latencies as
+     * {@link EventLog.Event#PLAN_BENCHMARK} events, along with the size of
+     * the subgoal graph, and follows the subgoal path.</li>
+     * <li>BOUNDED: IDA* within a fixed memory budget, for maps too large to
+     * keep per-cell search state; see {@link BoundedAstar}.</li>
+     * </ul>
+     */
+    public enum Planner
+    {
+        FLAT, SUBGOAL, BENCHMARK, BOUNDED
     }
 
     /**
@@ -722,4 +1130,146 @@ public class AstarAgent extends Agent
     {
         this.totalExecutionTime = totalExecutionTime;
     }
+
+    public Planner getPlanner()
+    {
+        return planner;
+    }
+
+    public void setPlanner(Planner planner)
+    {
+        this.planner = planner;
+    }
+
+    public int getPlanningTurn()
+    {
+        return planningTurn;
+    }
+
+    public void setPlanningTurn(int planningTurn)
+    {
+        this.planningTurn = planningTurn;
+    }
+
+    public boolean isTerminated()
+    {
+        return terminated;
+    }
+
+    public void setTerminated(boolean terminated)
+    {
+        this.terminated = terminated;
+    }
+
+    public OccupancyGrid getOccupancyGrid()
+    {
+        return occupancyGrid;
+    }
+
+    public void setOccupancyGrid(OccupancyGrid occupancyGrid)
+    {
+        this.occupancyGrid = occupancyGrid;
+    }
+
+    public GridAstar getFlatSearch()
+    {
+        if (isNull(flatSearch))
+            setFlatSearch(new GridAstar(getOccupancyGrid()));
+        return flatSearch;
+    }
+
+    public void setFlatSearch(GridAstar flatSearch)
+    {
+        this.flatSearch = flatSearch;
+    }
+
+    public boolean isPruning()
+    {
+        return pruning;
+    }
+
+    public void setPruning(boolean pruning)
+    {
+        this.pruning = pruning;
+    }
+
+    public long getMemoryBudget()
+    {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(long memoryBudget)
+    {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public PruningMap getPruningMap()
+    {
+        return pruningMap;
+    }
+
+    public void setPruningMap(PruningMap pruningMap)
+    {
+        this.pruningMap = pruningMap;
+    }
+
+    public ActionMap getActionMap()
+    {
+        return actionMap;
+    }
+
+    public AllocationProbe getAllocationProbe()
+    {
+        return allocationProbe;
+    }
+
+    public void setAllocationProbe(AllocationProbe allocationProbe)
+    {
+        this.allocationProbe = allocationProbe;
+    }
+
+    public boolean isProbingAllocations()
+    {
+        return !isNull(getAllocationProbe());
+    }
+
+    public Integer getFootmanKey()
+    {
+        return footmanKey;
+    }
+
+    public void setFootmanKey(Integer footmanKey)
+    {
+        this.footmanKey = footmanKey;
+    }
+
+    public Action[] getFootmanMoves()
+    {
+        return footmanMoves;
+    }
+
+    public void setFootmanMoves(Action[] footmanMoves)
+    {
+        this.footmanMoves = footmanMoves;
+    }
+
+    public Action getFootmanAttack()
+    {
+        return footmanAttack;
+    }
+
+    public void setFootmanAttack(Action footmanAttack)
+    {
+        this.footmanAttack = footmanAttack;
+    }
+
+    public EventLog getEventLog()
+    {
+        return eventLog;
+    }
+
+    public void setEventLog(EventLog eventLog)
+    {
+        this.eventLog = eventLog;
+    }
 }
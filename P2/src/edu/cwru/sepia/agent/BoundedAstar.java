@@ -0,0 +1,378 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Memory-bounded alternative to {@link GridAstar}: IDA* with a fixed-size
+ * transposition table. Apart from one bit per cell for the reachability
+ * check, nothing is allocated per cell of the map, so the memory used by a
+ * query is set by the budget and not by the size of the grid.
+ * <p>
+ * IDA* cannot tell that the goal is unreachable until it has re-expanded
+ * everything reachable at every threshold, so a query first flood fills from
+ * the start and fails at once if no goal cell is reached.
+ * <p>
+ * Half of the budget holds the transposition table, which remembers the
+ * cheapest cost at which a cell was reached in the current iteration so that
+ * duplicate paths are cut. Entries are overwritten on collision, which only
+ * costs repeated work. The other half holds the depth-first stack, which
+ * bounds the length of a path that can be found.
+ * <p>
+ * Once an iteration expands far more nodes than the table can hold,
+ * duplicates stop being detected and IDA* degrades quickly. The search then
+ * gives up optimality and inflates the heuristic, restarting with a larger
+ * weight each time the same happens. Every completed unweighted iteration
+ * raises a lower bound on the optimal cost, so a suboptimal path comes with
+ * an upper bound on how far it is from optimal. If even the largest weight
+ * runs out of budget, or the query as a whole expands more than a fixed
+ * multiple of the table, it fails and {@link #isExhausted()} is set.
+ *
+ * @author Ryan Tatton
+ * @since P2
+ */
+public class BoundedAstar
+{
+    public static final long DEFAULT_MEMORY = 1 << 20;
+    private static final int ENTRY_BYTES = 3 * Integer.BYTES;
+    private static final int FRAME_BYTES = 2 * Integer.BYTES;
+    private static final int EFFORT_FACTOR = 8;
+    private static final int TOTAL_EFFORT_FACTOR = 64;
+    private static final int UNWEIGHTED = 100;
+    private static final int[] WEIGHTS = {100, 150, 200, 300, 500, 1000};
+    private static final int EMPTY = -1;
+    private static final int[][] ORDERS = directionOrders();
+
+    private final OccupancyGrid grid;
+    private final long memory;
+    private final int[] tableCells;
+    private final int[] tableCosts;
+    private final int[] tableIterations;
+    private final int tableShift;
+    private final int[] cells;
+    private final int[] cursors;
+    private final BitSet reached;
+    private int iteration;
+    private int weight;
+    private int lowerBound;
+    private long expansions;
+    private boolean depthLimited;
+    private boolean exhausted;
+
+    /**
+     * @param grid   Occupancy grid to search.
+     * @param memory Budget in bytes for the search structures.
+     */
+    public BoundedAstar(OccupancyGrid grid, long memory)
+    {
+        long half = Math.max(memory / 2, 16L * ENTRY_BYTES);
+        int capacity = Integer.highestOneBit(
+                (int) Math.min(half / ENTRY_BYTES, 1 << 30));
+        int depth = (int) Math.min(half / FRAME_BYTES, grid.size() + 1L);
+        this.grid = grid;
+        this.memory = memory;
+        this.tableCells = new int[capacity];
+        this.tableCosts = new int[capacity];
+        this.tableIterations = new int[capacity];
+        this.tableShift = Integer.numberOfLeadingZeros(capacity) + 1;
+        this.cells = new int[depth];
+        this.cursors = new int[depth];
+        this.reached = new BitSet(grid.size());
+        this.iteration = 0;
+        Arrays.fill(tableCells, EMPTY);
+    }
+
+    /**
+     * @param start  Cell of the footman.
+     * @param target Cell of the town hall.
+     * @param enemy  Cell of the enemy footman, treated as blocked, or -1.
+     * @return Cells to move through, excluding start, ending adjacent to the
+     * target. Null if no path exists or none was found within the budget.
+     */
+    public int[] search(int start, int target, int enemy)
+    {
+        expansions = 0;
+        exhausted = false;
+        weight = UNWEIGHTED;
+        lowerBound = heuristic(start, target);
+        if (!isReachable(start, target, enemy))
+            return null;
+        long effort = (long) EFFORT_FACTOR * tableCells.length;
+        long totalEffort = (long) TOTAL_EFFORT_FACTOR * tableCells.length;
+        for (int stage = 0; stage < WEIGHTS.length; stage++)
+        {
+            weight = WEIGHTS[stage];
+            int threshold = f(0, start, target);
+            while (expansions <= totalEffort)
+            {
+                depthLimited = false;
+                long before = expansions;
+                int next = iterate(start, target, enemy, threshold, effort);
+                if (next < 0)
+                {
+                    if (weight == UNWEIGHTED)
+                        lowerBound = -next - 1;
+                    return path(-next - 1);
+                }
+                if (expansions - before > effort)
+                    break;
+                // Nothing was pruned, so a larger threshold finds nothing new
+                if (next == Integer.MAX_VALUE)
+                {
+                    exhausted = depthLimited;
+                    return null;
+                }
+                if (weight == UNWEIGHTED && !depthLimited)
+                    lowerBound = Math.max(lowerBound, next / UNWEIGHTED);
+                threshold = next;
+            }
+        }
+        exhausted = true;
+        return null;
+    }
+
+    /*
+     * Depth-first flood fill from the start over the reached bits, trying
+     * the directions toward the target first so that an open map is crossed
+     * almost straight. The stack is the one of the search. If it fills up,
+     * the cells it could not hold are found again by a scan for reached
+     * cells with a free neighbor that is not reached.
+     */
+    private boolean isReachable(int start, int target, int enemy)
+    {
+        reached.clear();
+        reached.set(start);
+        int top = 0;
+        cells[top++] = start;
+        while (top > 0)
+        {
+            boolean overflow = false;
+            while (top > 0)
+            {
+                int cell = cells[--top];
+                if (isGoal(cell, target))
+                    return true;
+                int[] order = ORDERS[orderIndex(cell, target)];
+                for (int d = order.length - 1; d >= 0; d--)
+                {
+                    int child = grid.neighbor(cell, order[d]);
+                    if (child < 0 || child == enemy || !grid.isFree(child)
+                            || reached.get(child))
+                        continue;
+                    if (top == cells.length)
+                    {
+                        overflow = true;
+                        continue;
+                    }
+                    reached.set(child);
+                    cells[top++] = child;
+                }
+            }
+            if (!overflow)
+                return false;
+            for (int cell = reached.nextSetBit(0);
+                 cell >= 0 && top < cells.length;
+                 cell = reached.nextSetBit(cell + 1))
+                if (hasUnreachedNeighbor(cell, enemy))
+                    cells[top++] = cell;
+        }
+        return false;
+    }
+
+    private boolean hasUnreachedNeighbor(int cell, int enemy)
+    {
+        for (int d = 0; d < OccupancyGrid.DX.length; d++)
+        {
+            int child = grid.neighbor(cell, d);
+            if (child >= 0 && child != enemy && grid.isFree(child)
+                    && !reached.get(child))
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * One depth-first iteration bounded by threshold. Returns the depth of
+     * the goal as -(depth + 1) if one was found, else the smallest f that
+     * exceeded the threshold. Stops early once effort expansions are spent.
+     */
+    private int iterate(int start,
+                        int target,
+                        int enemy,
+                        int threshold,
+                        long effort)
+    {
+        iteration++;
+        long spent = 0;
+        int next = Integer.MAX_VALUE;
+        int depth = 0;
+        cells[0] = start;
+        cursors[0] = 0;
+        store(start, 0);
+        while (depth >= 0)
+        {
+            int cell = cells[depth];
+            if (isGoal(cell, target))
+                return -(depth + 1);
+            if (cursors[depth] == OccupancyGrid.DX.length || spent > effort)
+            {
+                depth--;
+                continue;
+            }
+            int direction = ORDERS[orderIndex(cell, target)][cursors[depth]++];
+            int child = grid.neighbor(cell, direction);
+            if (child < 0 || child == enemy || !grid.isFree(child))
+                continue;
+            int cost = depth + 1;
+            int childF = f(cost, child, target);
+            if (childF > threshold)
+            {
+                next = Math.min(next, childF);
+                continue;
+            }
+            if (isDuplicate(child, cost))
+                continue;
+            if (cost == cells.length)
+            {
+                depthLimited = true;
+                continue;
+            }
+            store(child, cost);
+            expansions++;
+            spent++;
+            depth = cost;
+            cells[depth] = child;
+            cursors[depth] = 0;
+        }
+        return next;
+    }
+
+    private boolean isDuplicate(int cell, int cost)
+    {
+        int slot = slot(cell);
+        return tableCells[slot] == cell
+                && tableIterations[slot] == iteration
+                && tableCosts[slot] <= cost;
+    }
+
+    private void store(int cell, int cost)
+    {
+        int slot = slot(cell);
+        tableCells[slot] = cell;
+        tableCosts[slot] = cost;
+        tableIterations[slot] = iteration;
+    }
+
+    private int slot(int cell)
+    {
+        return (cell * 0x9E3779B1) >>> tableShift;
+    }
+
+    private int[] path(int depth)
+    {
+        return Arrays.copyOfRange(cells, 1, depth + 1);
+    }
+
+    private boolean isGoal(int cell, int target)
+    {
+        return cell != target && grid.distance(cell, target) <= 1;
+    }
+
+    private int heuristic(int cell, int target)
+    {
+        return Math.max(grid.distance(cell, target) - 1, 0);
+    }
+
+    // f scaled by 100 so that the weight can be a whole percentage
+    private int f(int cost, int cell, int target)
+    {
+        return UNWEIGHTED * cost + weight * heuristic(cell, target);
+    }
+
+    private int orderIndex(int cell, int target)
+    {
+        int dx = Integer.signum(grid.x(target) - grid.x(cell));
+        int dy = Integer.signum(grid.y(target) - grid.y(cell));
+        return (dy + 1) * 3 + dx + 1;
+    }
+
+    /*
+     * For each of the 9 signs of the offset to the target, the directions
+     * sorted so that those pointing toward the target are tried first.
+     */
+    private static int[][] directionOrders()
+    {
+        int[][] orders = new int[9][];
+        for (int dy = -1; dy <= 1; dy++)
+        {
+            for (int dx = -1; dx <= 1; dx++)
+            {
+                Integer[] order = new Integer[OccupancyGrid.DX.length];
+                for (int d = 0; d < order.length; d++)
+                    order[d] = d;
+                int sx = dx;
+                int sy = dy;
+                Arrays.sort(order, (a, b) -> Integer.compare(
+                        -(OccupancyGrid.DX[a] * sx + OccupancyGrid.DY[a] * sy),
+                        -(OccupancyGrid.DX[b] * sx + OccupancyGrid.DY[b] * sy)));
+                int[] directions = new int[order.length];
+                for (int d = 0; d < order.length; d++)
+                    directions[d] = order[d];
+                orders[(dy + 1) * 3 + dx + 1] = directions;
+            }
+        }
+        return orders;
+    }
+
+    /**
+     * @return Weight of the heuristic, as a percentage, the last path was
+     * found with. 100 means the path is optimal.
+     */
+    public int getWeight()
+    {
+        return weight;
+    }
+
+    public boolean isOptimal()
+    {
+        return weight == UNWEIGHTED;
+    }
+
+    /**
+     * @return Lower bound on the optimal path length of the last query. A
+     * path of length n is at most n minus this bound longer than optimal.
+     */
+    public int getLowerBound()
+    {
+        return lowerBound;
+    }
+
+    /**
+     * @return True if the last query failed because it ran out of budget,
+     * rather than because no path exists.
+     */
+    public boolean isExhausted()
+    {
+        return exhausted;
+    }
+
+    public long getExpansions()
+    {
+        return expansions;
+    }
+
+    public long getMemory()
+    {
+        return memory;
+    }
+
+    public int getMaxDepth()
+    {
+        return cells.length;
+    }
+
+    public OccupancyGrid getGrid()
+    {
+        return grid;
+    }
+}
@@ -0,0 +1,378 @@
+package edu.cwru.sepia.agent;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Levelled, structured event log. Events are written by the agent thread into
+ * a preallocated ring buffer of primitive fields and drained by a background
+ * writer thread into a newline-delimited JSON (NDJSON) file. Logging an event
+ * never allocates and never blocks; if the writer falls behind, the event is
+ * dropped and counted instead.
+ * <p>
+ * The default {@link Level#OFF} log starts no thread and opens no file, so
+ * every call to {@link #log} reduces to a single level check.
+ * <p>
+ * Every record carries the turn number and enough payload to reconstruct the
+ * decision that was made, so {@link #replay(File)} can rebuild any turn or
+ * planning episode from the file.
+ *
+ * @author Ryan Tatton
+ * @since P2
+ */
+public class EventLog implements AutoCloseable
+{
+    private static final int DEFAULT_CAPACITY = 1 << 12;
+    private static final int HEADER = 3; // nanos, turn, event
+    private static final int PAYLOAD = 8;
+    private static final int WIDTH = HEADER + PAYLOAD;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    public enum Level
+    {
+        OFF, INFO, DEBUG
+    }
+
+    /**
+     * Event types and the names of their payload fields, in order.
+     */
+    public enum Event
+    {
+        PLAN(Level.INFO,
+             "startX", "startY", "goalX", "goalY",
+             "enemyX", "enemyY", "pathLength", "planNanos"),
+        PLAN_BENCHMARK(Level.INFO,
+                       "flatNanos", "subgoalNanos",
+                       "flatLength", "subgoalLength",
+                       "flatExpansions", "subgoalExpansions",
+                       "subgoals", "subgoalEdges"),
+        PLAN_BOUNDED(Level.INFO,
+                     "pathLength", "lowerBound", "weightPercent",
+                     "expansions", "memoryBytes", "exhausted"),
+        MOVE(Level.DEBUG, "x", "y"),
+        ATTACK(Level.DEBUG, "attacker", "target"),
+        INVALID_PLAN(Level.INFO, "x", "y"),
+        TERMINAL(Level.INFO,
+                 "planNanos", "executionNanos",
+                 "allocatedBytes", "allocationTurns");
+
+        private final Level level;
+        private final String[] fields;
+
+        Event(Level level, String... fields)
+        {
+            this.level = level;
+            this.fields = fields;
+        }
+
+        public Level getLevel()
+        {
+            return level;
+        }
+
+        public String[] getFields()
+        {
+            return fields;
+        }
+    }
+
+    private final Level level;
+    private final File file;
+    private final long[] ring;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean running;
+    private Thread writer;
+
+    public EventLog(Level level, File file)
+    {
+        this(level, file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param level    Most verbose level that is recorded.
+     * @param file     NDJSON file to write to. Unused if level is OFF.
+     * @param capacity Number of events the ring buffer holds; rounded up to
+     *                 a power of two.
+     */
+    public EventLog(Level level, File file, int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1) << 1);
+        this.level = level;
+        this.file = file;
+        this.mask = size - 1;
+        this.ring = level == Level.OFF ? new long[0] : new long[size * WIDTH];
+        if (level != Level.OFF)
+            start();
+    }
+
+    /**
+     * @return A log that records nothing.
+     */
+    public static EventLog silent()
+    {
+        return new EventLog(Level.OFF, null, 0);
+    }
+
+    public boolean isEnabled(Event event)
+    {
+        return event.getLevel().compareTo(level) <= 0;
+    }
+
+    public void log(Event event, int turn, long... payload)
+    {
+        if (!isEnabled(event))
+            return;
+        long slot = head.get();
+        if (slot - tail.get() > mask)
+        {
+            dropped.incrementAndGet();
+            return;
+        }
+        int base = (int) (slot & mask) * WIDTH;
+        ring[base] = System.nanoTime();
+        ring[base + 1] = turn;
+        ring[base + 2] = event.ordinal();
+        for (int i = 0; i < PAYLOAD; i++)
+            ring[base + HEADER + i] = i < payload.length ? payload[i] : 0;
+        head.lazySet(slot + 1);
+    }
+
+    /*
+     * Varargs allocate, so the per-turn events have fixed-arity overloads.
+     */
+    public void log(Event event, int turn, long a, long b)
+    {
+        if (!isEnabled(event))
+            return;
+        long slot = head.get();
+        if (slot - tail.get() > mask)
+        {
+            dropped.incrementAndGet();
+            return;
+        }
+        int base = (int) (slot & mask) * WIDTH;
+        ring[base] = System.nanoTime();
+        ring[base + 1] = turn;
+        ring[base + 2] = event.ordinal();
+        ring[base + HEADER] = a;
+        ring[base + HEADER + 1] = b;
+        head.lazySet(slot + 1);
+    }
+
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    private void start()
+    {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null)
+            parent.mkdirs();
+        running = true;
+        writer = new Thread(this::drainLoop, "astar-event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void drainLoop()
+    {
+        StringBuilder line = new StringBuilder(128);
+        try (Writer out = new BufferedWriter(new FileWriter(file)))
+        {
+            while (running || tail.get() < head.get())
+            {
+                if (!drain(out, line))
+                {
+                    out.flush();
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean drain(Writer out, StringBuilder line) throws IOException
+    {
+        long published = head.get();
+        long consumed = tail.get();
+        if (consumed == published)
+            return false;
+        Event[] events = Event.values();
+        for (; consumed < published; consumed++)
+        {
+            int base = (int) (consumed & mask) * WIDTH;
+            Event event = events[(int) ring[base + 2]];
+            line.setLength(0);
+            line.append("{\"nanos\":").append(ring[base])
+                .append(",\"turn\":").append(ring[base + 1])
+                .append(",\"event\":\"").append(event.name()).append('"');
+            String[] fields = event.getFields();
+            for (int i = 0; i < fields.length; i++)
+                line.append(",\"").append(fields[i]).append("\":")
+                    .append(ring[base + HEADER + i]);
+            line.append("}\n");
+            out.append(line);
+            tail.lazySet(consumed + 1);
+        }
+        return true;
+    }
+
+    /**
+     * Stops the writer thread once everything logged so far has been
+     * written. Closing a closed log does nothing.
+     */
+    @Override
+    public void close()
+    {
+        if (writer == null)
+            return;
+        running = false;
+        LockSupport.unpark(writer);
+        try
+        {
+            writer.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    /**
+     * A single event read back from a log file.
+     */
+    public static class Record
+    {
+        private final long nanos;
+        private final int turn;
+        private final Event event;
+        private final long[] payload;
+
+        private Record(long nanos, int turn, Event event, long[] payload)
+        {
+            this.nanos = nanos;
+            this.turn = turn;
+            this.event = event;
+            this.payload = payload;
+        }
+
+        public long get(String field)
+        {
+            String[] fields = getEvent().getFields();
+            for (int i = 0; i < fields.length; i++)
+                if (fields[i].equals(field))
+                    return payload[i];
+            throw new IllegalArgumentException(
+                    getEvent() + " has no field " + field);
+        }
+
+        public long getNanos()
+        {
+            return nanos;
+        }
+
+        public int getTurn()
+        {
+            return turn;
+        }
+
+        public Event getEvent()
+        {
+            return event;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder s = new StringBuilder();
+            s.append("turn ").append(turn).append(' ').append(event);
+            String[] fields = event.getFields();
+            for (int i = 0; i < fields.length; i++)
+                s.append(' ').append(fields[i]).append('=').append(payload[i]);
+            return s.toString();
+        }
+    }
+
+    /**
+     * Reads every event of a log file, in the order they were logged.
+     *
+     * @param file NDJSON file written by an EventLog.
+     * @return The events of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    public static List<Record> replay(File file) throws IOException
+    {
+        List<Record> records = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(file)))
+        {
+            String line;
+            while ((line = in.readLine()) != null)
+                if (!line.isEmpty())
+                    records.add(parse(line));
+        }
+        return records;
+    }
+
+    /**
+     * Reads the events of a single turn, e.g. to replay one planning
+     * episode.
+     */
+    public static List<Record> replay(File file, int turn) throws IOException
+    {
+        List<Record> records = replay(file);
+        records.removeIf(r -> r.getTurn() != turn);
+        return records;
+    }
+
+    // Parses the flat objects written by drain(); not a general JSON parser.
+    private static Record parse(String line)
+    {
+        String body = line.trim();
+        body = body.substring(1, body.length() - 1);
+        long nanos = 0;
+        int turn = 0;
+        Event event = null;
+        List<String[]> rest = new ArrayList<>();
+        for (String pair : body.split(","))
+        {
+            String[] kv = pair.split(":", 2);
+            String key = kv[0].replace("\"", "");
+            String value = kv[1].replace("\"", "");
+            if (key.equals("nanos"))
+                nanos = Long.parseLong(value);
+            else if (key.equals("turn"))
+                turn = Integer.parseInt(value);
+            else if (key.equals("event"))
+                event = Event.valueOf(value);
+            else
+                rest.add(new String[]{key, value});
+        }
+        if (event == null)
+            throw new IllegalArgumentException("No event in: " + line);
+        String[] fields = event.getFields();
+        long[] payload = new long[fields.length];
+        for (String[] kv : rest)
+            for (int i = 0; i < fields.length; i++)
+                if (fields[i].equals(kv[0]))
+                    payload[i] = Long.parseLong(kv[1]);
+        return new Record(nanos, turn, event, payload);
+    }
+}
@@ -0,0 +1,160 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+
+/**
+ * Flat A* over an {@link OccupancyGrid}. The goal is any free cell adjacent
+ * to a target cell (the town hall), and the heuristic is the Chebyshev
+ * distance to the target minus one, which is consistent for 8-connected
+ * unit-cost moves.
+ * <p>
+ * The per-cell arrays are allocated once and reused between queries; a
+ * query only touches the cells it visits. If a {@link PruningMap} for the
+ * target is set, the cells it prunes are never expanded.
+ *
+ * @author Ryan Tatton
+ * @since P2
+ */
+public class GridAstar
+{
+    private final OccupancyGrid grid;
+    private final int[] g;
+    private final int[] parent;
+    private final int[] visited;
+    private final int[] closed;
+    private final IntMinHeap open;
+    private PruningMap pruning;
+    private int startRegion;
+    private int query;
+    private int expansions;
+
+    public GridAstar(OccupancyGrid grid)
+    {
+        this.grid = grid;
+        this.g = new int[grid.size()];
+        this.parent = new int[grid.size()];
+        this.visited = new int[grid.size()];
+        this.closed = new int[grid.size()];
+        this.open = new IntMinHeap(64);
+        this.query = 0;
+    }
+
+    /**
+     * @param start  Cell of the footman.
+     * @param target Cell of the town hall.
+     * @param enemy  Cell of the enemy footman, treated as blocked, or -1.
+     * @return Cells to move through, excluding start, ending adjacent to the
+     * target. Null if no such path exists.
+     */
+    public int[] search(int start, int target, int enemy)
+    {
+        nextQuery();
+        expansions = 0;
+        open.clear();
+        startRegion = isPruning(target) ? pruning.getRegion(start) : 0;
+        visit(start, 0, -1);
+        open.push(key(start, 0, target), start);
+        while (!open.isEmpty())
+        {
+            int cell = open.pop();
+            if (closed[cell] == query)
+                continue;
+            closed[cell] = query;
+            if (isGoal(cell, target))
+                return reconstruct(cell);
+            expansions++;
+            for (int d = 0; d < OccupancyGrid.DX.length; d++)
+            {
+                int next = grid.neighbor(cell, d);
+                if (next < 0 || next == enemy || !isOpen(next, target))
+                    continue;
+                int nextG = g[cell] + 1;
+                if (visited[next] == query && g[next] <= nextG)
+                    continue;
+                visit(next, nextG, cell);
+                open.push(key(next, nextG, target), next);
+            }
+        }
+        return null;
+    }
+
+    private boolean isOpen(int cell, int target)
+    {
+        return grid.isFree(cell)
+                && !(isPruning(target) && pruning.isPruned(cell, startRegion));
+    }
+
+    private boolean isPruning(int target)
+    {
+        return pruning != null && pruning.getTarget() == target;
+    }
+
+    private boolean isGoal(int cell, int target)
+    {
+        return cell != target && grid.distance(cell, target) <= 1;
+    }
+
+    private int heuristic(int cell, int target)
+    {
+        return Math.max(grid.distance(cell, target) - 1, 0);
+    }
+
+    // Orders by f, breaking ties toward the deeper node
+    private long key(int cell, int cellG, int target)
+    {
+        long f = cellG + heuristic(cell, target);
+        return (f << 32) | (Integer.MAX_VALUE - cellG);
+    }
+
+    private void visit(int cell, int cellG, int from)
+    {
+        visited[cell] = query;
+        g[cell] = cellG;
+        parent[cell] = from;
+    }
+
+    private int[] reconstruct(int goal)
+    {
+        int[] path = new int[g[goal]];
+        for (int cell = goal, i = path.length - 1; i >= 0; i--)
+        {
+            path[i] = cell;
+            cell = parent[cell];
+        }
+        return path;
+    }
+
+    private void nextQuery()
+    {
+        if (++query == Integer.MAX_VALUE)
+        {
+            Arrays.fill(visited, 0);
+            Arrays.fill(closed, 0);
+            query = 1;
+        }
+    }
+
+    public int getExpansions()
+    {
+        return expansions;
+    }
+
+    public PruningMap getPruning()
+    {
+        return pruning;
+    }
+
+    /**
+     * @param pruning Pruning map built on the same grid, or null to search
+     *                every cell.
+     */
+    public void setPruning(PruningMap pruning)
+    {
+        this.pruning = pruning;
+    }
+
+    public OccupancyGrid getGrid()
+    {
+        return grid;
+    }
+}
@@ -0,0 +1,94 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of int values ordered by long keys. Used as the open list
+ * of the grid searches so that pushing a node does not box it.
+ *
+ * @author Ryan Tatton
+ * @since P2
+ */
+public class IntMinHeap
+{
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public IntMinHeap(int initialCapacity)
+    {
+        this.keys = new long[Math.max(initialCapacity, 2)];
+        this.values = new int[Math.max(initialCapacity, 2)];
+        this.size = 0;
+    }
+
+    public void push(long key, int value)
+    {
+        if (size == keys.length)
+        {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        int i = size++;
+        while (i > 0)
+        {
+            int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key)
+                break;
+            keys[i] = keys[parent];
+            values[i] = values[parent];
+            i = parent;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /**
+     * Removes the value with the smallest key.
+     *
+     * @return The removed value.
+     */
+    public int pop()
+    {
+        int top = values[0];
+        size--;
+        long key = keys[size];
+        int value = values[size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half)
+        {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child])
+                child++;
+            if (key <= keys[child])
+                break;
+            keys[i] = keys[child];
+            values[i] = values[child];
+            i = child;
+        }
+        keys[i] = key;
+        values[i] = value;
+        return top;
+    }
+
+    public long peekKey()
+    {
+        return keys[0];
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public void clear()
+    {
+        size = 0;
+    }
+}
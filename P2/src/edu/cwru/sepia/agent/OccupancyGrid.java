@@ -0,0 +1,124 @@
+package edu.cwru.sepia.agent;
+
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * Static occupancy of a SEPIA map. Cells are addressed either by their X and
+ * Y positions or by a single row-major index, which is what the searches use
+ * so that per-cell bookkeeping can live in primitive arrays.
+ * <p>
+ * Movement is 8-connected and every move costs 1, so the distance between
+ * two cells in free space is their Chebyshev distance.
+ *
+ * @author Ryan Tatton
+ * @since P2
+ */
+public class OccupancyGrid
+{
+    /*
+     * Unit offsets of the 8 neighbors of a cell, cardinals first.
+     */
+    static final int[] DX = {1, -1, 0, 0, 1, 1, -1, -1};
+    static final int[] DY = {0, 0, 1, -1, 1, -1, 1, -1};
+
+    private final int xExtent;
+    private final int yExtent;
+    private final BitSet blocked;
+
+    public OccupancyGrid(int xExtent, int yExtent)
+    {
+        this.xExtent = xExtent;
+        this.yExtent = yExtent;
+        this.blocked = new BitSet(xExtent * yExtent);
+    }
+
+    public void block(int x, int y)
+    {
+        if (inBounds(x, y))
+            blocked.set(index(x, y));
+    }
+
+    public boolean inBounds(int x, int y)
+    {
+        return x >= 0 && y >= 0 && x < xExtent && y < yExtent;
+    }
+
+    public boolean isFree(int x, int y)
+    {
+        return inBounds(x, y) && !blocked.get(index(x, y));
+    }
+
+    public boolean isFree(int cell)
+    {
+        return !blocked.get(cell);
+    }
+
+    public int index(int x, int y)
+    {
+        return y * xExtent + x;
+    }
+
+    public int x(int cell)
+    {
+        return cell % xExtent;
+    }
+
+    public int y(int cell)
+    {
+        return cell / xExtent;
+    }
+
+    public int size()
+    {
+        return xExtent * yExtent;
+    }
+
+    /**
+     * @return Chebyshev distance between two cells.
+     */
+    public int distance(int from, int to)
+    {
+        return Math.max(Math.abs(x(from) - x(to)), Math.abs(y(from) - y(to)));
+    }
+
+    /**
+     * @return Index of the neighbor of a cell in the given direction (see
+     * {@link #DX}), or -1 if it is out of bounds.
+     */
+    public int neighbor(int cell, int direction)
+    {
+        int x = x(cell) + DX[direction];
+        int y = y(cell) + DY[direction];
+        return inBounds(x, y) ? index(x, y) : -1;
+    }
+
+    public int getXExtent()
+    {
+        return xExtent;
+    }
+
+    public int getYExtent()
+    {
+        return yExtent;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        OccupancyGrid grid = (OccupancyGrid) o;
+        return xExtent == grid.xExtent
+                && yExtent == grid.yExtent
+                && blocked.equals(grid.blocked);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(xExtent, yExtent, blocked);
+    }
+}
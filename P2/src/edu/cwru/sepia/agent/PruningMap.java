@@ -0,0 +1,298 @@
+package edu.cwru.sepia.agent;
+
+import java.util.Arrays;
+
+/**
+ * Cells of an {@link OccupancyGrid} that can never be on a shortest path to a
+ * target (the town hall), so that a search can skip them. Two kinds of cell
+ * are pruned:
+ * <ul>
+ * <li>Dead ends: cells that are cut off from every goal cell (the free
+ * neighbors of the target) by a single articulation cell. A path that
+ * enters such a pocket has to leave it through the same cell.</li>
+ * <li>Swamps: cells whose remaining free neighbors are all adjacent to each
+ * other. Any path through such a cell can step directly between its
+ * neighbors instead, so it is removed and its neighbors are checked
+ * again.</li>
+ * </ul>
+ * Free cells that cannot reach the target at all are pruned as well.
+ * <p>
+ * Pruned cells are grouped into connected regions. A pocket is still needed
+ * when the search starts inside it, so the region of the start cell is never
+ * pruned for that search. The map depends only on the grid and the target
+ * and must be rebuilt when either changes, e.g. when a tree is harvested.
+ *
+ * @author Ryan Tatton
+ * @since P2
+ */
+public class PruningMap
+{
+    private static final int NONE = -1;
+    private static final int UNPRUNED = 0;
+
+    private final OccupancyGrid grid;
+    private final int target;
+    private final int[] region;
+    private int prunedCount;
+    private int regionCount;
+
+    /**
+     * @param grid   Occupancy grid to prune.
+     * @param target Cell of the town hall.
+     */
+    public PruningMap(OccupancyGrid grid, int target)
+    {
+        this.grid = grid;
+        this.target = target;
+        this.region = new int[grid.size()];
+        boolean[] pruned = new boolean[grid.size()];
+        pruneDeadEnds(pruned);
+        pruneSwamps(pruned);
+        labelRegions(pruned);
+    }
+
+    /**
+     * @param cell        Cell to test.
+     * @param startRegion Region of the start cell of the search; see
+     *                    {@link #getRegion(int)}.
+     * @return True if the search can skip the cell.
+     */
+    public boolean isPruned(int cell, int startRegion)
+    {
+        return region[cell] != UNPRUNED && region[cell] != startRegion;
+    }
+
+    /**
+     * @return Region of a pruned cell, or 0 if the cell is not pruned.
+     */
+    public int getRegion(int cell)
+    {
+        return region[cell];
+    }
+
+    private boolean isGoal(int cell)
+    {
+        return cell != target
+                && grid.isFree(cell)
+                && grid.distance(cell, target) <= 1;
+    }
+
+    /*
+     * Iterative Tarjan DFS over the free cells plus a virtual root (index
+     * size) that is adjacent to every goal cell. A subtree that hangs off an
+     * articulation cell and holds no goal cell is a dead end. Subtrees are
+     * contiguous in discovery order, so they are marked as a range.
+     */
+    private void pruneDeadEnds(boolean[] pruned)
+    {
+        int size = grid.size();
+        int root = size;
+        int[] disc = new int[size + 1];
+        int[] low = new int[size + 1];
+        int[] parent = new int[size + 1];
+        int[] cursor = new int[size + 1];
+        int[] subtree = new int[size + 1];
+        int[] goals = new int[size + 1];
+        int[] order = new int[size + 1];
+        int[] stack = new int[size + 1];
+        int[] goalCells = goalCells();
+
+        int time = 0;
+        int top = 0;
+        disc[root] = low[root] = ++time;
+        order[0] = root;
+        parent[root] = NONE;
+        subtree[root] = 1;
+        stack[top++] = root;
+        while (top > 0)
+        {
+            int cell = stack[top - 1];
+            int next = nextNeighbor(cell, cursor, goalCells, root);
+            if (next != NONE)
+            {
+                if (disc[next] == 0)
+                {
+                    disc[next] = low[next] = ++time;
+                    order[time - 1] = next;
+                    parent[next] = cell;
+                    subtree[next] = 1;
+                    goals[next] = next != root && isGoal(next) ? 1 : 0;
+                    stack[top++] = next;
+                }
+                else if (next != parent[cell])
+                {
+                    low[cell] = Math.min(low[cell], disc[next]);
+                }
+                continue;
+            }
+            top--;
+            int up = parent[cell];
+            if (up == NONE)
+                continue;
+            low[up] = Math.min(low[up], low[cell]);
+            subtree[up] += subtree[cell];
+            goals[up] += goals[cell];
+            if (up != root && low[cell] >= disc[up] && goals[cell] == 0)
+                for (int i = disc[cell] - 1; i < disc[cell] - 1 + subtree[cell]; i++)
+                    pruned[order[i]] = true;
+        }
+
+        for (int cell = 0; cell < size; cell++)
+            if (grid.isFree(cell) && disc[cell] == 0 && cell != target)
+                pruned[cell] = true;
+    }
+
+    /*
+     * Returns the next unexplored neighbor of a cell in the DFS, or NONE.
+     * Cursor values 0 to 7 are the grid directions and 8 is the edge from a
+     * goal cell back to the virtual root.
+     */
+    private int nextNeighbor(int cell,
+                             int[] cursor,
+                             int[] goalCells,
+                             int root)
+    {
+        if (cell == root)
+            return cursor[root] < goalCells.length
+                   ? goalCells[cursor[root]++]
+                   : NONE;
+        while (cursor[cell] < OccupancyGrid.DX.length)
+        {
+            int next = grid.neighbor(cell, cursor[cell]++);
+            if (next >= 0 && next != target && grid.isFree(next))
+                return next;
+        }
+        if (cursor[cell] == OccupancyGrid.DX.length)
+        {
+            cursor[cell]++;
+            if (isGoal(cell))
+                return root;
+        }
+        return NONE;
+    }
+
+    private int[] goalCells()
+    {
+        int[] cells = new int[OccupancyGrid.DX.length];
+        int count = 0;
+        for (int d = 0; d < OccupancyGrid.DX.length; d++)
+        {
+            int cell = grid.neighbor(target, d);
+            if (cell >= 0 && isGoal(cell))
+                cells[count++] = cell;
+        }
+        return Arrays.copyOf(cells, count);
+    }
+
+    private void pruneSwamps(boolean[] pruned)
+    {
+        int size = grid.size() + 1;
+        int[] queue = new int[size];
+        boolean[] queued = new boolean[grid.size()];
+        int head = 0;
+        int tail = 0;
+        for (int cell = 0; cell < grid.size(); cell++)
+        {
+            if (isOpen(cell, pruned))
+            {
+                queue[tail++] = cell;
+                queued[cell] = true;
+            }
+        }
+        int[] neighbors = new int[OccupancyGrid.DX.length];
+        while (head != tail)
+        {
+            int cell = queue[head];
+            head = (head + 1) % size;
+            queued[cell] = false;
+            if (!isOpen(cell, pruned) || isGoal(cell))
+                continue;
+            int count = openNeighbors(cell, pruned, neighbors);
+            if (!isClique(neighbors, count))
+                continue;
+            pruned[cell] = true;
+            for (int i = 0; i < count; i++)
+            {
+                if (queued[neighbors[i]])
+                    continue;
+                queue[tail] = neighbors[i];
+                tail = (tail + 1) % size;
+                queued[neighbors[i]] = true;
+            }
+        }
+    }
+
+    private boolean isOpen(int cell, boolean[] pruned)
+    {
+        return cell != target && grid.isFree(cell) && !pruned[cell];
+    }
+
+    private int openNeighbors(int cell, boolean[] pruned, int[] neighbors)
+    {
+        int count = 0;
+        for (int d = 0; d < OccupancyGrid.DX.length; d++)
+        {
+            int next = grid.neighbor(cell, d);
+            if (next >= 0 && isOpen(next, pruned))
+                neighbors[count++] = next;
+        }
+        return count;
+    }
+
+    private boolean isClique(int[] cells, int count)
+    {
+        for (int i = 0; i < count; i++)
+            for (int j = i + 1; j < count; j++)
+                if (grid.distance(cells[i], cells[j]) > 1)
+                    return false;
+        return true;
+    }
+
+    private void labelRegions(boolean[] pruned)
+    {
+        int[] queue = new int[grid.size()];
+        for (int cell = 0; cell < grid.size(); cell++)
+        {
+            if (!pruned[cell] || region[cell] != UNPRUNED)
+                continue;
+            int label = ++regionCount;
+            int head = 0;
+            int tail = 0;
+            region[cell] = label;
+            queue[tail++] = cell;
+            while (head < tail)
+            {
+                int current = queue[head++];
+                prunedCount++;
+                for (int d = 0; d < OccupancyGrid.DX.length; d++)
+                {
+                    int next = grid.neighbor(current, d);
+                    if (next < 0 || !pruned[next] || region[next] != UNPRUNED)
+                        continue;
+                    region[next] = label;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    public OccupancyGrid getGrid()
+    {
+        return grid;
+    }
+
+    public int getTarget()
+    {
+        return target;
+    }
+
+    public int getPrunedCount()
+    {
+        return prunedCount;
+    }
+
+    public int getRegionCount()
+    {
+        return regionCount;
+    }
+}
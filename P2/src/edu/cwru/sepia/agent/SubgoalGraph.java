@@ -0,0 +1,584 @@
+package edu.cwru.sepia.agent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Simple subgoal graph over a static {@link OccupancyGrid}.
+ * <p>
+ * Subgoals are the free cells at the corners of obstacles: a shortest path
+ * only has to turn where an obstacle forces it to. SEPIA lets units move
+ * diagonally past a blocked cell, so a path is forced to turn at the cell
+ * beyond the tip of an obstacle, not next to its diagonal corner. A free
+ * cell is a subgoal if a cardinal neighbor is blocked and at least one of
+ * the two cells flanking that neighbor is free. Cells along a straight wall
+ * are not subgoals. Two subgoals are connected when
+ * they are directly reachable, i.e. a path between them exists that stays in
+ * their bounding box, whose length equals their Chebyshev distance, and which
+ * passes through no other subgoal. The graph is built once per map. The first
+ * query for a town hall also connects the cells around it and computes the
+ * exact cost-to-go of every subgoal. A later query only has to find the best
+ * subgoal directly reachable from the start and follow the precomputed route
+ * from there; the abstract graph is searched only when the enemy footman
+ * blocks that route. Each abstract edge is then refined back into moves.
+ * <p>
+ * The enemy footman is not part of the static map. During a query its cell
+ * is treated as blocked: an edge with a shortest path that could run
+ * through it is only followed if another of its shortest paths avoids it,
+ * and the cells the enemy makes corners are added as temporary subgoals.
+ * The precomputed route is only used when the start reaches it before any
+ * of those corners.
+ *
+ * @author Ryan Tatton
+ * @since P2
+ */
+public class SubgoalGraph
+{
+    private static final int NONE = -1;
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final OccupancyGrid grid;
+    private final BitSet subgoals;
+    private final int[] subgoalIds;
+    private final int[][] edges;
+
+    // Connections to the cells around the town hall, built once per target
+    private int preparedTarget;
+    private BitSet goalStops;
+    private Map<Integer, int[]> goalEdges;
+    private final int[] costToGoal;
+    private final int[] nextHop;
+
+    // Scratch space for the reachability and refinement searches
+    private final int[] stamp;
+    private final int[] depth;
+    private final int[] parent;
+    private final int[] queue;
+    private final int[] found;
+    private int currentStamp;
+
+    // Scratch space for the abstract search
+    private final int[] abstractStamp;
+    private final int[] abstractG;
+    private final int[] abstractParent;
+    private final IntMinHeap open;
+    private int currentQuery;
+    private int expansions;
+
+    public SubgoalGraph(OccupancyGrid grid)
+    {
+        int size = grid.size();
+        this.grid = grid;
+        this.subgoals = new BitSet(size);
+        this.subgoalIds = new int[size];
+        this.costToGoal = new int[size];
+        this.nextHop = new int[size];
+        this.stamp = new int[size];
+        this.depth = new int[size];
+        this.parent = new int[size];
+        this.queue = new int[size];
+        this.found = new int[size];
+        this.abstractStamp = new int[size];
+        this.abstractG = new int[size];
+        this.abstractParent = new int[size];
+        this.open = new IntMinHeap(64);
+        this.preparedTarget = NONE;
+
+        Arrays.fill(subgoalIds, NONE);
+        int nSubgoals = 0;
+        for (int cell = 0; cell < size; cell++)
+            if (isCorner(cell))
+            {
+                subgoals.set(cell);
+                subgoalIds[cell] = nSubgoals++;
+            }
+        this.edges = new int[nSubgoals][];
+        for (int cell = subgoals.nextSetBit(0);
+             cell >= 0;
+             cell = subgoals.nextSetBit(cell + 1))
+            edges[subgoalIds[cell]] = directlyReachable(cell, NONE, subgoals);
+    }
+
+    /**
+     * @param start  Cell of the footman.
+     * @param target Cell of the town hall.
+     * @param enemy  Cell of the enemy footman, or -1.
+     * @return Cells to move through, excluding start, ending adjacent to the
+     * target. Null if the abstract graph does not connect start and goal.
+     */
+    public int[] query(int start, int target, int enemy)
+    {
+        expansions = 0;
+        if (isGoal(start, target))
+            return new int[0];
+        prepare(target);
+        int goal = directRoute(start, target, enemy);
+        if (goal == NONE)
+            goal = abstractSearch(start, target, enemy);
+        if (goal == NONE)
+            return null;
+        return refine(goal, enemy);
+    }
+
+    /*
+     * Connects the free cells around the town hall to the graph and runs a
+     * backward search from them, so that every subgoal knows its exact
+     * distance to the goal on the static map.
+     */
+    private void prepare(int target)
+    {
+        if (target == preparedTarget)
+            return;
+        preparedTarget = target;
+        goalStops = (BitSet) subgoals.clone();
+        List<Integer> goals = new ArrayList<>();
+        for (int d = 0; d < OccupancyGrid.DX.length; d++)
+        {
+            int cell = grid.neighbor(target, d);
+            if (cell >= 0 && grid.isFree(cell))
+            {
+                goals.add(cell);
+                goalStops.set(cell);
+            }
+        }
+        Map<Integer, List<Integer>> connections = new HashMap<>();
+        for (int goal : goals)
+            for (int reached : directlyReachable(goal, NONE, goalStops))
+                connect(connections, goal, reached);
+        goalEdges = new HashMap<>();
+        for (Map.Entry<Integer, List<Integer>> entry : connections.entrySet())
+            goalEdges.put(entry.getKey(),
+                          entry.getValue()
+                               .stream()
+                               .mapToInt(Integer::intValue)
+                               .toArray());
+
+        Arrays.fill(costToGoal, UNREACHABLE);
+        open.clear();
+        for (int goal : goals)
+        {
+            costToGoal[goal] = 0;
+            open.push(0, goal);
+        }
+        while (!open.isEmpty())
+        {
+            long cost = open.peekKey();
+            int node = open.pop();
+            if (cost != costToGoal[node])
+                continue;
+            if (subgoals.get(node))
+                for (int next : edges[subgoalIds[node]])
+                    relaxCostToGoal(node, next);
+            int[] extra = goalEdges.get(node);
+            if (extra != null)
+                for (int next : extra)
+                    relaxCostToGoal(node, next);
+        }
+    }
+
+    private void relaxCostToGoal(int node, int next)
+    {
+        int cost = costToGoal[node] + grid.distance(node, next);
+        if (cost >= costToGoal[next])
+            return;
+        costToGoal[next] = cost;
+        nextHop[next] = node;
+        open.push(cost, next);
+    }
+
+    /*
+     * Best-first search from the start over the cells it directly reaches.
+     * Subgoals are ranked by their exact cost-to-go, so the first one popped
+     * starts the cheapest route on the static map. A corner made by the
+     * enemy popped first may start a cheaper route, and an edge the enemy
+     * cuts makes the route longer, so either leaves it to the abstract
+     * search. Leaves the route in the abstract search arrays and returns its
+     * goal cell, or NONE.
+     */
+    private int directRoute(int start, int target, int enemy)
+    {
+        currentStamp++;
+        currentQuery++;
+        open.clear();
+        stamp[start] = currentStamp;
+        depth[start] = 0;
+        open.push(Math.max(grid.distance(start, target) - 1, 0), start);
+        int exit = NONE;
+        while (!open.isEmpty() && exit == NONE)
+        {
+            int cell = open.pop();
+            if (cell != start && isEnemyCorner(cell, enemy))
+                return NONE;
+            if (cell != start && goalStops.get(cell))
+            {
+                exit = cell;
+                break;
+            }
+            expansions++;
+            for (int d = 0; d < OccupancyGrid.DX.length; d++)
+            {
+                int next = grid.neighbor(cell, d);
+                if (next < 0 || next == enemy || !grid.isFree(next)
+                        || stamp[next] == currentStamp)
+                    continue;
+                if (grid.distance(start, next) != depth[cell] + 1
+                        || !movesAway(start, cell, next))
+                    continue;
+                int h = goalStops.get(next)
+                        ? costToGoal[next]
+                        : Math.max(grid.distance(next, target) - 1, 0);
+                if (h == UNREACHABLE)
+                    continue;
+                stamp[next] = currentStamp;
+                depth[next] = depth[cell] + 1;
+                open.push(depth[next] + h, next);
+            }
+        }
+        if (exit == NONE)
+            return NONE;
+
+        abstractVisit(start, 0, NONE);
+        abstractVisit(exit, depth[exit], start);
+        int node = exit;
+        while (costToGoal[node] != 0)
+        {
+            int next = nextHop[node];
+            if (isCut(node, next, enemy))
+                return NONE;
+            abstractVisit(next,
+                          abstractG[node] + grid.distance(node, next),
+                          node);
+            node = next;
+        }
+        return node;
+    }
+
+    private static void connect(Map<Integer, List<Integer>> connections,
+                                int from,
+                                int to)
+    {
+        connections.computeIfAbsent(from, n -> new ArrayList<>()).add(to);
+        connections.computeIfAbsent(to, n -> new ArrayList<>()).add(from);
+    }
+
+    /*
+     * A* over the subgoals. Subgoals and goal cells are guided by their exact
+     * static cost-to-go, which the enemy can only increase, so the heuristic
+     * stays admissible. Nodes are reopened when a cheaper path is found. The
+     * start and the corners made by the enemy are connected with the enemy
+     * blocked.
+     */
+    private int abstractSearch(int start, int target, int enemy)
+    {
+        BitSet stops = goalStops;
+        List<Integer> temporary = new ArrayList<>();
+        temporary.add(start);
+        if (enemy != NONE)
+        {
+            stops = (BitSet) goalStops.clone();
+            for (int d = 0; d < OccupancyGrid.DX.length; d++)
+            {
+                int cell = grid.neighbor(enemy, d);
+                if (cell >= 0 && cell != start && isEnemyCorner(cell, enemy))
+                {
+                    temporary.add(cell);
+                    stops.set(cell);
+                }
+            }
+        }
+        Map<Integer, List<Integer>> temporaryEdges = new HashMap<>();
+        for (int node : temporary)
+            for (int reached : directlyReachable(node, enemy, stops))
+                connect(temporaryEdges, node, reached);
+
+        currentQuery++;
+        open.clear();
+        abstractVisit(start, 0, NONE);
+        open.push(key(start, 0, target), start);
+        while (!open.isEmpty())
+        {
+            long key = open.peekKey();
+            int node = open.pop();
+            int nodeG = Integer.MAX_VALUE - (int) key;
+            if (nodeG != abstractG[node])
+                continue;
+            if (isGoal(node, target))
+                return node;
+            expansions++;
+            if (subgoals.get(node))
+                for (int next : edges[subgoalIds[node]])
+                    if (!isCut(node, next, enemy))
+                        relax(node, next, target);
+            int[] toGoal = goalEdges.get(node);
+            if (toGoal != null)
+                for (int next : toGoal)
+                    if (!isCut(node, next, enemy))
+                        relax(node, next, target);
+            List<Integer> extra = temporaryEdges.get(node);
+            if (extra != null)
+                for (int next : extra)
+                    relax(node, next, target);
+        }
+        return NONE;
+    }
+
+    private void relax(int node, int next, int target)
+    {
+        if (goalStops.get(next) && costToGoal[next] == UNREACHABLE)
+            return;
+        int nextG = abstractG[node] + grid.distance(node, next);
+        if (abstractStamp[next] == currentQuery && abstractG[next] <= nextG)
+            return;
+        abstractVisit(next, nextG, node);
+        open.push(key(next, nextG, target), next);
+    }
+
+    private void abstractVisit(int node, int nodeG, int from)
+    {
+        abstractStamp[node] = currentQuery;
+        abstractG[node] = nodeG;
+        abstractParent[node] = from;
+    }
+
+    private long key(int node, int nodeG, int target)
+    {
+        int h = goalStops.get(node)
+                ? costToGoal[node]
+                : Math.max(grid.distance(node, target) - 1, 0);
+        long f = (long) nodeG + h;
+        return (f << 32) | (Integer.MAX_VALUE - nodeG);
+    }
+
+    /*
+     * An edge is cut by the enemy if every shortest path between its
+     * endpoints in free space runs through the enemy's cell.
+     */
+    private boolean isCut(int from, int to, int enemy)
+    {
+        return passesNear(from, to, enemy)
+                && !shortestSegment(from, to, enemy);
+    }
+
+    /*
+     * An edge passes near the enemy if the enemy's cell lies on one of the
+     * shortest paths between its endpoints that stay in their bounding box.
+     */
+    private boolean passesNear(int from, int to, int enemy)
+    {
+        if (enemy == NONE)
+            return false;
+        if (enemy == from || enemy == to)
+            return true;
+        boolean inBox = between(grid.x(enemy), grid.x(from), grid.x(to))
+                && between(grid.y(enemy), grid.y(from), grid.y(to));
+        return inBox
+                && grid.distance(from, enemy) + grid.distance(enemy, to)
+                == grid.distance(from, to);
+    }
+
+    private static boolean between(int value, int a, int b)
+    {
+        return Math.min(a, b) <= value && value <= Math.max(a, b);
+    }
+
+    private boolean isGoal(int cell, int target)
+    {
+        return cell != target && grid.distance(cell, target) <= 1;
+    }
+
+    // Expands the abstract path ending at goal into grid moves.
+    private int[] refine(int goal, int enemy)
+    {
+        List<Integer> nodes = new ArrayList<>();
+        for (int node = goal; node != NONE; node = abstractParent[node])
+            nodes.add(0, node);
+        int[] path = new int[abstractG[goal]];
+        int length = 0;
+        for (int i = 1; i < nodes.size(); i++)
+        {
+            int from = nodes.get(i - 1);
+            int to = nodes.get(i);
+            int steps = grid.distance(from, to);
+            if (!shortestSegment(from, to, enemy))
+                return null;
+            for (int cell = to, j = steps - 1; j >= 0; j--)
+            {
+                path[length + j] = cell;
+                cell = parent[cell];
+            }
+            length += steps;
+        }
+        return path;
+    }
+
+    /*
+     * Breadth-first search from one cell to another restricted to the cells
+     * on their shortest paths in free space; leaves the result in parent.
+     */
+    private boolean shortestSegment(int from, int to, int enemy)
+    {
+        int length = grid.distance(from, to);
+        int head = 0;
+        int tail = 0;
+        currentStamp++;
+        stamp[from] = currentStamp;
+        queue[tail++] = from;
+        while (head < tail)
+        {
+            int cell = queue[head++];
+            if (cell == to)
+                return true;
+            for (int d = 0; d < OccupancyGrid.DX.length; d++)
+            {
+                int next = grid.neighbor(cell, d);
+                if (next < 0 || next == enemy || !grid.isFree(next)
+                        || stamp[next] == currentStamp)
+                    continue;
+                if (grid.distance(from, next) + grid.distance(next, to)
+                        != length)
+                    continue;
+                stamp[next] = currentStamp;
+                parent[next] = cell;
+                queue[tail++] = next;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Breadth-first search that only follows moves increasing the Chebyshev
+     * distance from the source, so every cell it reaches is reached along a
+     * shortest path. The search does not continue past stop cells, which are
+     * returned.
+     */
+    private int[] directlyReachable(int source, int enemy, BitSet stops)
+    {
+        int head = 0;
+        int tail = 0;
+        int nFound = 0;
+        currentStamp++;
+        stamp[source] = currentStamp;
+        depth[source] = 0;
+        queue[tail++] = source;
+        while (head < tail)
+        {
+            int cell = queue[head++];
+            for (int d = 0; d < OccupancyGrid.DX.length; d++)
+            {
+                int next = grid.neighbor(cell, d);
+                if (next < 0 || next == enemy || !grid.isFree(next)
+                        || stamp[next] == currentStamp)
+                    continue;
+                if (grid.distance(source, next) != depth[cell] + 1
+                        || !movesAway(source, cell, next))
+                    continue;
+                stamp[next] = currentStamp;
+                depth[next] = depth[cell] + 1;
+                if (stops.get(next))
+                    found[nFound++] = next;
+                else
+                    queue[tail++] = next;
+            }
+        }
+        return Arrays.copyOf(found, nFound);
+    }
+
+    /*
+     * True if a move does not bring the path back toward the source on
+     * either axis, so paths built from such moves stay inside the bounding
+     * box of their endpoints.
+     */
+    private boolean movesAway(int source, int from, int to)
+    {
+        return awayOnAxis(grid.x(source), grid.x(from), grid.x(to))
+                && awayOnAxis(grid.y(source), grid.y(from), grid.y(to));
+    }
+
+    private static boolean awayOnAxis(int source, int from, int to)
+    {
+        int before = from - source;
+        int after = to - source;
+        return Math.abs(after) >= Math.abs(before)
+                && (before == 0 || Integer.signum(after) == Integer.signum(before));
+    }
+
+    /*
+     * A free cell is a subgoal if a cardinal neighbor is blocked and a path
+     * can pass that neighbor on one side, i.e. one of the two cells flanking
+     * it is free. The edge of the map counts as neither blocked nor free.
+     */
+    private boolean isCorner(int cell)
+    {
+        if (!grid.isFree(cell))
+            return false;
+        int x = grid.x(cell);
+        int y = grid.y(cell);
+        for (int d = -1; d <= 1; d += 2)
+        {
+            if (isBlocked(x + d, y)
+                    && (isOpen(x + d, y - 1) || isOpen(x + d, y + 1)))
+                return true;
+            if (isBlocked(x, y + d)
+                    && (isOpen(x - 1, y + d) || isOpen(x + 1, y + d)))
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * True if the enemy makes a cell a corner that is not a subgoal already:
+     * the enemy is a cardinal neighbor of the cell and one of the two cells
+     * flanking the enemy is free.
+     */
+    private boolean isEnemyCorner(int cell, int enemy)
+    {
+        if (enemy == NONE || goalStops.get(cell) || !grid.isFree(cell))
+            return false;
+        int x = grid.x(enemy);
+        int y = grid.y(enemy);
+        int dx = x - grid.x(cell);
+        int dy = y - grid.y(cell);
+        if (Math.abs(dx) + Math.abs(dy) != 1)
+            return false;
+        return dx != 0
+               ? isOpen(x, y - 1) || isOpen(x, y + 1)
+               : isOpen(x - 1, y) || isOpen(x + 1, y);
+    }
+
+    private boolean isBlocked(int x, int y)
+    {
+        return grid.inBounds(x, y) && !grid.isFree(x, y);
+    }
+
+    private boolean isOpen(int x, int y)
+    {
+        return grid.inBounds(x, y) && grid.isFree(x, y);
+    }
+
+    public int getSubgoalCount()
+    {
+        return edges.length;
+    }
+
+    public int getEdgeCount()
+    {
+        int count = 0;
+        for (int[] neighbors : edges)
+            count += neighbors.length;
+        return count / 2;
+    }
+
+    public int getExpansions()
+    {
+        return expansions;
+    }
+
+    public OccupancyGrid getGrid()
+    {
+        return grid;
+    }
+}
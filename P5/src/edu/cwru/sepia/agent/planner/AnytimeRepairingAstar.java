@@ -0,0 +1,255 @@
+package edu.cwru.sepia.agent.planner;
+
+import java.util.*;
+
+/**
+ * Anytime Repairing A* (ARA*). The first pass is weighted A* with the first
+ * weight of the schedule, ordered by g + w * h, which finds a plan quickly.
+ * Every later pass lowers the weight and goes on from where the previous
+ * one stopped, instead of starting over:
+ * <ul>
+ * <li>States that got cheaper after they were expanded (the inconsistent
+ * states) are opened again, and the open set is reordered for the new
+ * weight.</li>
+ * <li>A pass ends when the best plan costs no more than the smallest key
+ * in the open set, so its cost is within w of the optimal cost if the
+ * heuristic is admissible.</li>
+ * <li>States that cannot lead to a cheaper plan are pruned.</li>
+ * </ul>
+ * The search stops when the schedule is done or the budget runs out. The
+ * best plan found so far can be read at any moment, from any thread,
+ * through {@link #getBest()}, and what every finished pass found through
+ * {@link #getPasses()}.
+ */
+public class AnytimeRepairingAstar
+{
+    private final double[] weights;
+    private final long budget;
+    private volatile GameState best;
+    private volatile double bestWeight;
+    private final List<Pass> passes;
+    private int expanded;
+
+    /**
+     * @param weights Weights of the passes, decreasing to 1 for an optimal
+     *                last pass.
+     * @param budget  Planning time in milliseconds.
+     */
+    public AnytimeRepairingAstar(double[] weights, long budget)
+    {
+        this.weights = weights.clone();
+        this.budget = budget;
+        this.passes = new ArrayList<>();
+    }
+
+    /**
+     * @return The best goal state found within the budget, or null if none
+     * was found.
+     */
+    public GameState search(GameState start)
+    {
+        long started = System.nanoTime();
+        long deadline = started + budget * 1_000_000L;
+        Map<GameState, GameState> seen = new HashMap<>();
+        Set<GameState> closed = new HashSet<>();
+        List<GameState> inconsistent = new ArrayList<>();
+        IndexedHeap<Entry> open = new IndexedHeap<>();
+        best = null;
+        bestWeight = Double.POSITIVE_INFINITY;
+        expanded = 0;
+        passes.clear();
+        seen.put(start, start);
+        open.offer(new Entry(start, weights[0]));
+        for (double weight : weights)
+        {
+            IndexedHeap<Entry> reordered = new IndexedHeap<>();
+            for (Entry entry = open.poll(); entry != null; entry = open.poll())
+                reopen(reordered, entry.state, weight);
+            for (GameState state : inconsistent)
+                reopen(reordered, seen.get(state), weight);
+            open = reordered;
+            inconsistent.clear();
+            closed.clear();
+            boolean finished = improvePath(
+                    open, seen, closed, inconsistent, weight, deadline);
+            if (!finished)
+                break;
+            if (best != null)
+                bestWeight = weight;
+            passes.add(new Pass(weight,
+                                best,
+                                expanded,
+                                (System.nanoTime() - started) / 1_000_000L));
+        }
+        return best;
+    }
+
+    private void reopen(IndexedHeap<Entry> open,
+                        GameState state,
+                        double weight)
+    {
+        if (best == null || state.getEstimate() < best.getCost())
+            open.offer(new Entry(state, weight));
+    }
+
+    /*
+     * One pass of weighted A*. Returns false if the deadline passed before
+     * the pass was done.
+     */
+    private boolean improvePath(IndexedHeap<Entry> open,
+                                Map<GameState, GameState> seen,
+                                Set<GameState> closed,
+                                List<GameState> inconsistent,
+                                double weight,
+                                long deadline)
+    {
+        while (!open.isEmpty())
+        {
+            if (System.nanoTime() >= deadline)
+                return false;
+            Entry top = open.peek();
+            if (best != null && best.getCost() <= top.key)
+                return true;
+            open.poll();
+            closed.add(top.state);
+            expanded++;
+            Iterator<GameState> children = top.state.successors();
+            while (children.hasNext())
+            {
+                GameState child = children.next();
+                if (best != null && child.getEstimate() >= best.getCost())
+                    continue;
+                if (child.isGoal())
+                {
+                    best = child;
+                    continue;
+                }
+                GameState known = seen.get(child);
+                if (known != null && child.getCost() >= known.getCost())
+                {
+                    known.wake(child);
+                    continue;
+                }
+                seen.put(child, child);
+                if (closed.contains(child))
+                    inconsistent.add(child);
+                else
+                    open.offer(new Entry(child, weight));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The cheapest goal state found so far, or null.
+     */
+    public GameState getBest()
+    {
+        return best;
+    }
+
+    /**
+     * @return Weight of the last pass that finished with a plan, which
+     * bounds how much more than optimal the best plan costs.
+     */
+    public double getBestWeight()
+    {
+        return bestWeight;
+    }
+
+    public int getExpanded()
+    {
+        return expanded;
+    }
+
+    /**
+     * @return The passes of the last search that finished, in order.
+     */
+    public List<Pass> getPasses()
+    {
+        return passes;
+    }
+
+    /**
+     * What one pass had found when it finished.
+     */
+    public static class Pass
+    {
+        private final double weight;
+        private final GameState best;
+        private final int expanded;
+        private final long millis;
+
+        private Pass(double weight, GameState best, int expanded, long millis)
+        {
+            this.weight = weight;
+            this.best = best;
+            this.expanded = expanded;
+            this.millis = millis;
+        }
+
+        public double getWeight()
+        {
+            return weight;
+        }
+
+        /**
+         * @return The cheapest goal state found up to this pass, or null.
+         */
+        public GameState getBest()
+        {
+            return best;
+        }
+
+        /**
+         * @return States expanded since the search started.
+         */
+        public int getExpanded()
+        {
+            return expanded;
+        }
+
+        /**
+         * @return Milliseconds since the search started.
+         */
+        public long getMillis()
+        {
+            return millis;
+        }
+    }
+
+    /*
+     * Open state keyed by g + w * h. Equal when the states are, so the heap
+     * replaces the entry of a state that is reached more cheaply.
+     */
+    private static class Entry implements Comparable<Entry>
+    {
+        private final GameState state;
+        private final double key;
+
+        private Entry(GameState state, double weight)
+        {
+            this.state = state;
+            this.key = state.getCost() + weight * state.heuristic();
+        }
+
+        @Override
+        public int compareTo(Entry entry)
+        {
+            int byKey = Double.compare(key, entry.key);
+            return byKey != 0 ? byKey : state.compareTo(entry.state);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Entry && state.equals(((Entry) o).state);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return state.hashCode();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package edu.cwru.sepia.agent.planner;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A* that takes the k best open states at a time and expands them in
+ * parallel. Workers only enumerate and evaluate the children of their
+ * state, which is most of the work of a search. The children are merged
+ * into the open set by the calling thread, in the order of the batch, so
+ * the search does the same for any number of threads.
+ * <p>
+ * Optimality is kept the way A* keeps it:
+ * <ul>
+ * <li>A goal is returned only when it is the best open state. One that is
+ * polled behind other states of a batch is put back and the batch ends
+ * there.</li>
+ * <li>States of a batch after the first may not have their cheapest cost
+ * yet, since a sibling may reach them more cheaply. A closed state that is
+ * reached more cheaply is opened again.</li>
+ * </ul>
+ * With a batch of one this is A*, except that a goal is accepted when it is
+ * expanded instead of when it is generated.
+ */
+public class BatchAstar
+{
+    private final ForkJoinPool pool;
+    private final int batchSize;
+    private int expanded;
+
+    /**
+     * @param pool      Pool that expands the states of a batch.
+     * @param batchSize Most states expanded at a time.
+     */
+    public BatchAstar(ForkJoinPool pool, int batchSize)
+    {
+        this.pool = pool;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * @return The cheapest goal state, or null if no goal can be reached.
+     */
+    public GameState search(GameState start)
+    {
+        IndexedHeap<GameState> frontier = new IndexedHeap<>();
+        Map<GameState, GameState> explored = new HashMap<>();
+        List<GameState> batch = new ArrayList<>(batchSize);
+        List<ForkJoinTask<List<GameState>>> tasks = new ArrayList<>(batchSize);
+        expanded = 0;
+        frontier.offer(start);
+        while (!frontier.isEmpty())
+        {
+            batch.clear();
+            while (batch.size() < batchSize && !frontier.isEmpty())
+            {
+                GameState state = frontier.poll();
+                if (state.isGoal())
+                {
+                    if (batch.isEmpty())
+                        return state;
+                    frontier.offer(state);
+                    break;
+                }
+                batch.add(state);
+            }
+            // Workers only read the closed set, which changes between batches
+            for (GameState parent : batch)
+                explored.put(parent, parent);
+            tasks.clear();
+            for (GameState parent : batch)
+                tasks.add(pool.submit(() -> expand(parent, explored)));
+            expanded += batch.size();
+            for (ForkJoinTask<List<GameState>> task : tasks)
+            {
+                for (GameState child : task.join())
+                {
+                    GameState closed = explored.get(child);
+                    if (closed != null)
+                    {
+                        if (child.getCost() >= closed.getCost())
+                            continue;
+                        explored.remove(child);
+                    }
+                    if (!frontier.offer(child))
+                        frontier.get(child).wake(child);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<GameState> expand(GameState parent,
+                                          Map<GameState, GameState> explored)
+    {
+        List<GameState> children = new ArrayList<>();
+        Iterator<GameState> successors = parent.successors();
+        while (successors.hasNext())
+        {
+            GameState child = successors.next();
+            GameState closed = explored.get(child);
+            if (closed != null && child.getCost() >= closed.getCost())
+                continue;
+            // Evaluated here so the merge does not compute the heuristic
+            child.heuristic();
+            children.add(child);
+        }
+        return children;
+    }
+
+    /**
+     * @return Number of states expanded by the last search.
+     */
+    public int getExpanded()
+    {
+        return expanded;
+    }
+}
@@ -0,0 +1,15 @@
+package edu.cwru.sepia.agent.planner;
+
+/**
+ * The original heuristic: the amount of gold and wood still missing. It
+ * ignores distances and the number of peasants and is not on the scale of
+ * the cost.
+ */
+public class DeficitHeuristic implements Heuristic
+{
+    @Override
+    public double estimate(GameState state)
+    {
+        return state.getResourceTracker().getDiffFromGoal();
+    }
+}
@@ -0,0 +1,94 @@
+package edu.cwru.sepia.agent.planner;
+
+import edu.cwru.sepia.agent.planner.actions.Idle;
+import edu.cwru.sepia.agent.planner.actions.StripsAction;
+
+import java.util.*;
+
+/**
+ * Enforced hill-climbing as in FF. From the current state a breadth-first
+ * search looks for any state with a smaller heuristic, which becomes the
+ * current state, until a goal is reached. Only helpful steps are followed:
+ * steps in which every unit that does not idle takes an action that
+ * {@link Heuristic#isHelpful(GameState, StripsAction)} accepts.
+ * <p>
+ * The search fails if a breadth-first search runs out of states, which
+ * pruning and dead ends can cause even when a plan exists. Callers should
+ * then fall back to a complete search.
+ */
+public class EnforcedHillClimbing
+{
+    private int expanded;
+    private int evaluated;
+
+    /**
+     * @return A goal state, or null if the search got stuck.
+     */
+    public GameState search(GameState start)
+    {
+        expanded = 0;
+        evaluated = 1;
+        GameState current = start;
+        while (!current.isGoal())
+        {
+            current = improve(current, current.heuristic());
+            if (current == null)
+                return null;
+        }
+        return current;
+    }
+
+    private GameState improve(GameState from, double bound)
+    {
+        Deque<GameState> queue = new ArrayDeque<>();
+        Set<GameState> seen = new HashSet<>();
+        queue.add(from);
+        seen.add(from);
+        while (!queue.isEmpty())
+        {
+            GameState state = queue.poll();
+            expanded++;
+            Iterator<GameState> children = state.successors();
+            while (children.hasNext())
+            {
+                GameState child = children.next();
+                if (!isHelpful(state, child) || !seen.add(child))
+                    continue;
+                evaluated++;
+                if (child.heuristic() < bound)
+                    return child;
+                queue.add(child);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isHelpful(GameState parent, GameState child)
+    {
+        Heuristic heuristic = parent.getProblem().getHeuristic();
+        boolean acts = false;
+        for (StripsAction action : child.getCreationActions().getActions())
+        {
+            if (action instanceof Idle)
+                continue;
+            if (!heuristic.isHelpful(parent, action))
+                return false;
+            acts = true;
+        }
+        return acts;
+    }
+
+    public int getExpanded()
+    {
+        return expanded;
+    }
+
+    /**
+     * @return Number of states whose heuristic was computed by the last
+     * search.
+     */
+    public int getEvaluated()
+    {
+        return evaluated;
+    }
+}
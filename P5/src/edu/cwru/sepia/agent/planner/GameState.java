@@ -1,16 +1,23 @@
 package edu.cwru.sepia.agent.planner;
 
+import edu.cwru.sepia.agent.planner.actions.ActionTable;
+import edu.cwru.sepia.agent.planner.actions.Deposit;
+import edu.cwru.sepia.agent.planner.actions.Gather;
 import edu.cwru.sepia.agent.planner.actions.Idle;
+import edu.cwru.sepia.agent.planner.actions.Produce;
 import edu.cwru.sepia.agent.planner.actions.StripsAction;
 import edu.cwru.sepia.agent.planner.actions.StripsActionSet;
 import edu.cwru.sepia.agent.planner.actions.StripsEnum;
+import edu.cwru.sepia.agent.planner.actions.Trip;
 import edu.cwru.sepia.environment.model.state.ResourceNode.ResourceView;
 import edu.cwru.sepia.environment.model.state.ResourceType;
 import edu.cwru.sepia.environment.model.state.State.StateView;
 import edu.cwru.sepia.environment.model.state.Unit.UnitView;
+import edu.cwru.sepia.environment.model.state.UnitTemplate.UnitTemplateView;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -31,14 +38,50 @@ import static edu.cwru.sepia.environment.model.state.ResourceType.WOOD;
 // transition diagram so that it can extend to moving "workers" between a
 // variety of pools.
 //
+
+/**
+ * A node of the planning search. Everything that stays the same during a
+ * search (the goal, the resources and the initial units) lives in a
+ * {@link Problem} that all states share, so a state only holds what actions
+ * change, packed into a single int array:
+ * <pre>
+ * [gold, wood, remaining(resource 0), ..., remaining(resource R - 1),
+ *  code(unit 0), carried(unit 0), ..., code(unit U - 1), carried(unit U - 1)]
+ * </pre>
+ * The code of a unit holds its status (a {@link StripsEnum} ordinal) in the
+ * low byte and, while it carries something, the slot of the resource it
+ * gathered from plus one above that. Copying a state clones that one array.
+ * <p>
+ * The {@link UnitTracker}, {@link ResourceTracker} and {@link VisitTracker}
+ * are views over the array that keep the original tracker API.
+ */
 public class GameState implements Comparable<GameState>
 {
+    /**
+     * Cargo of a unit that carries nothing.
+     */
+    public static final int NONE = -1;
+    private static final int GOLD_INDEX = 0;
+    private static final int WOOD_INDEX = 1;
+    private static final int RESOURCES_INDEX = 2;
+    private static final int UNIT_WIDTH = 2;
+    private static final int STATUS_BITS = 8;
+    private static final int STATUS_MASK = (1 << STATUS_BITS) - 1;
+    private static final StripsEnum[] STATUSES = StripsEnum.values();
+    private static final long SLEEP_PRODUCE = 1L << 63;
+    private static final int SLEEP_GATHERS = 63;
+
+    private final Problem problem;
+    private int[] data;
+    private long hash;
+    private GameState cameFrom;
+    private StripsActionSet creationActions;
+    private long cost;
+    private double heuristic;
+    private long sleeping;
     private UnitTracker unitTracker;
     private ResourceTracker resourceTracker;
     private VisitTracker visitTracker;
-    private boolean buildPeasants;
-    private GameState cameFrom;
-    private StripsActionSet creationActions;
 
     /**
      * Construct a GameState from a stateview object. This is used to
@@ -61,25 +104,35 @@ public class GameState implements Comparable<GameState>
                      int requiredWood,
                      boolean buildPeasants)
     {
-        this.unitTracker = createUnitTracker(state);
-        this.resourceTracker = createResourceTracker(state,
-                                                     playernum,
-                                                     requiredGold,
-                                                     requiredWood);
-        this.visitTracker = new VisitTracker();
-        this.buildPeasants = buildPeasants;
+        this(createProblem(state,
+                           playernum,
+                           requiredGold,
+                           requiredWood,
+                           buildPeasants));
+    }
+
+    /**
+     * Constructs the initial state of a problem.
+     *
+     * @param problem Problem to be solved.
+     */
+    public GameState(Problem problem)
+    {
+        this.problem = problem;
+        this.data = problem.initialData();
+        this.hash = zobrist(data);
         this.cameFrom = null;
         this.creationActions = new StripsActionSet();
+        evaluate();
     }
 
     private GameState(GameState gameState)
     {
-        this.unitTracker = gameState.getUnitTracker().copy();
-        this.resourceTracker = gameState.getResourceTracker().copy();
-        this.visitTracker = gameState.getVisitTracker().copy();
-        this.buildPeasants = gameState.considerBuildingPeasants();
+        this.problem = gameState.getProblem();
+        this.data = gameState.data.clone();
+        this.hash = gameState.hash;
         this.cameFrom = gameState;
-        this.creationActions = gameState.getCreationActions().copy();
+        this.creationActions = new StripsActionSet();
     }
 
     public GameState copy()
@@ -87,56 +140,95 @@ public class GameState implements Comparable<GameState>
         return new GameState(this);
     }
 
-    public UnitTracker createUnitTracker(StateView state)
+    public static Problem createProblem(StateView state,
+                                        int playerNum,
+                                        int requiredGold,
+                                        int requiredWood,
+                                        boolean buildPeasants)
     {
-        List<UnitView> peasantUnits = state.getAllUnits();
-        peasantUnits.removeIf(u -> u.equals(getTownHall(state)));
-        int goldCost = peasantUnits.get(0).getTemplateView().getGoldCost();
-        int woodCost = peasantUnits.get(0).getTemplateView().getWoodCost();
-        UnitBuilder u = new UnitBuilder();
-        List<Unit> units = new ArrayList<>(u.validActions(GATHER, DEPOSIT)
-                                            .goldCostToProduce(goldCost)
-                                            .woodCostToProduce(woodCost)
-                                            .build(peasantUnits.size()));
-        units.add(u.validActions(PRODUCE).build());
-        return new UnitTrackerBuilder().units(units).build();
+        return describeProblem(state,
+                               playerNum,
+                               requiredGold,
+                               requiredWood,
+                               buildPeasants).build();
     }
 
-    public ResourceTracker createResourceTracker(StateView state,
+    /**
+     * @return A builder holding everything createProblem would, so that
+     * search options can be set before the problem is built.
+     */
+    public static ProblemBuilder describeProblem(StateView state,
                                                  int playerNum,
                                                  int requiredGold,
-                                                 int requiredWood)
+                                                 int requiredWood,
+                                                 boolean buildPeasants)
     {
-        ResourceTrackerBuilder b = new ResourceTrackerBuilder();
-        return b.currentAmount(GOLD, state.getResourceAmount(playerNum, GOLD))
+        List<Resource> resources =
+                getResources(state, Type.GOLD_MINE, Type.TREE);
+        UnitTemplateView peasant = getPeasant(state).getTemplateView();
+        ProblemBuilder builder = new ProblemBuilder();
+        for (Resource resource : resources)
+            builder.remaining(resource,
+                              state.getResourceNode(resource.getId())
+                                   .getAmountRemaining());
+        return builder
+                .units(createUnits(state))
+                .resources(resources)
+                .currentAmount(GOLD, state.getResourceAmount(playerNum, GOLD))
                 .currentAmount(WOOD, state.getResourceAmount(playerNum, WOOD))
-                .resources(getResources(state, Type.GOLD_MINE, Type.TREE))
                 .goal(new GoalBuilder<Integer>().specify("gold", requiredGold)
                                                 .specify("wood", requiredWood)
                                                 .build())
-                .build();
+                .buildPeasants(buildPeasants)
+                .moveDuration(peasant.getDurationMove())
+                .gatherDuration(GOLD, peasant.getDurationGatherGold())
+                .gatherDuration(WOOD, peasant.getDurationGatherWood())
+                .depositDuration(peasant.getDurationDeposit())
+                .produceDuration(peasant.getTimeCost());
+    }
+
+    // Constructor helper method. The town hall takes slot 0 and the
+    // peasants follow in order of their SEPIA ids, which PEAgent relies on.
+    // Every peasant is built the same way, so they are interchangeable and
+    // may be reordered by sortPeasants().
+    private static List<Unit> createUnits(StateView state)
+    {
+        UnitView townHall = getTownHall(state);
+        List<UnitView> peasantUnits = state.getAllUnits();
+        peasantUnits.removeIf(u -> u.getID() == townHall.getID());
+        peasantUnits.sort(Comparator.comparingInt(UnitView::getID));
+        int goldCost = peasantUnits.get(0).getTemplateView().getGoldCost();
+        int woodCost = peasantUnits.get(0).getTemplateView().getWoodCost();
+        List<Unit> units = new ArrayList<>();
+        units.add(new UnitBuilder().id(0)
+                                   .validActions(PRODUCE)
+                                   .goldCostToProduce(goldCost)
+                                   .woodCostToProduce(woodCost)
+                                   .build());
+        units.addAll(new UnitBuilder().id(1)
+                                      .validActions(GATHER, DEPOSIT)
+                                      .goldCostToProduce(goldCost)
+                                      .woodCostToProduce(woodCost)
+                                      .build(peasantUnits.size()));
+        return units;
     }
 
     // Constructor helper method
-    public Map<Resource, Integer> getResources(StateView state, Type... types)
+    public static List<Resource> getResources(StateView state, Type... types)
     {
         UnitView townHall = getTownHall(state);
-        Map<Resource, Integer> resources = new HashMap<>();
+        List<Resource> resources = new ArrayList<>();
         for (Type t : types)
             for (ResourceView r : state.getResourceNodes(t))
-            {
-                Resource resource;
-                resource = new Resource(r.getID(),
-                                        Type.getResourceType(r.getType()),
-                                        distanceToTownHall(townHall, r),
-                                        r.getAmountRemaining());
-                resources.put(resource, resource.getRemaining());
-            }
+                resources.add(new Resource(resources.size(),
+                                           r.getID(),
+                                           Type.getResourceType(r.getType()),
+                                           distanceToTownHall(townHall, r)));
         return resources;
     }
 
     // Constructor helper method
-    private UnitView getTownHall(StateView state)
+    private static UnitView getTownHall(StateView state)
     {
         List<UnitView> units = state.getAllUnits();
         units.removeIf(u -> !u.getTemplateView()
@@ -149,13 +241,28 @@ public class GameState implements Comparable<GameState>
     }
 
     // Constructor helper method
-    private double distanceToTownHall(UnitView townHall, ResourceView resource)
+    private static UnitView getPeasant(StateView state)
+    {
+        List<UnitView> units = state.getAllUnits();
+        units.removeIf(u -> !u.getTemplateView()
+                              .getName()
+                              .equalsIgnoreCase("peasant"));
+        if (units.size() > 0)
+            return units.get(0);
+        else
+            throw new NoSuchElementException("No peasant exists!");
+    }
+
+    // Constructor helper method. Units move diagonally as fast as straight,
+    // so on an open map the path to a resource is this many moves long.
+    private static double distanceToTownHall(UnitView townHall,
+                                             ResourceView resource)
     {
         Position townHallLoc = Position.locate(townHall.getXPosition(),
                                                townHall.getYPosition());
         Position resourceLoc = Position.locate(resource.getXPosition(),
                                                resource.getYPosition());
-        return townHallLoc.euclideanDistance(resourceLoc);
+        return townHallLoc.chebyshevDistance(resourceLoc);
     }
 
     /**
@@ -170,80 +277,315 @@ public class GameState implements Comparable<GameState>
      */
     public boolean isGoal()
     {
-        return getResourceTracker().isGoalSatisfied();
+        return getGold() >= getProblem().getRequired(GOLD)
+                && getWood() >= getProblem().getRequired(WOOD);
     }
 
     /*
-    All present Strips.StripsEnum at the beginning of GameState instantiation
-    are the result of being set in the parent GameState. That is, upon
-    considering possible SEPIA actions, the current GameState describes what
-    is possible for the current state, as opposed to describing what will be
-    possible for the proceeding children states.
+    All Strips.StripsEnums that are present at the beginning of GameState
+    instantiation are the result of being set in the parent GameState. That is,
+    upon considering possible SEPIA actions, the current GameState describes
+    what is possible for the current state, as opposed to describing what
+    will be possible for the proceeding children states.
      */
 
     /**
      * The branching factor of this search graph are much higher than the
      * planning. Generate all of the possible successor states and their
      * associated actions in this method.
+     * <p>
+     * Each unit may take any of the effects of the action it took last, so a
+     * child exists for every combination of those effects whose
+     * preconditions hold. A combination in which every unit idles changes
+     * nothing and is skipped.
      *
      * @return A list of the possible successor states and their associated
      * actions
      */
     public Set<GameState> generateChildren()
     {
-        Set<GameState> children;
-        if (getCameFrom() == null)
-            children = initialChildren();
-        else
-            children = null;
+        Set<GameState> children = new LinkedHashSet<>();
+        successors().forEachRemaining(children::add);
         return children;
     }
 
+    /**
+     * Enumerates the same children as {@link #generateChildren()}, one at a
+     * time. Joint actions are built on demand and their preconditions are
+     * checked before anything is copied, so a search that stops early (on a
+     * goal, or once f exceeds a bound) never builds the other children.
+     * Apart from the children it returns, the iterator holds O(units).
+     *
+     * @return Iterator over the children of this state.
+     */
+    public Iterator<GameState> successors()
+    {
+        return new SuccessorIterator(this);
+    }
+
     /*
-    All Strips.StripsEnums that are present at the beginning of GameState
-    instantiation are the result of being set in the parent GameState. That is,
-    upon considering possible SEPIA actions, the current GameState describes
-    what is possible for the current state, as opposed to describing what
-    will be possible for the proceeding children states.
+     * Partial-order reduction with sleep sets. Gather, Deposit, Produce and
+     * Idle of different units commute, except that gatherers of the same
+     * resource compete for what it holds. So a unit that idled through a
+     * step in which it could have started an action, without conflicting
+     * with the rest of the step, gains nothing by starting that action
+     * right after. Starting it one step earlier reaches the same states
+     * with the same actions. The action is asleep for that unit in the
+     * child.
+     *
+     * A step lasts as long as its slowest action, so moving an action into
+     * it costs nothing only if the action is done no later than the step.
+     * Only such actions are put to sleep: a Produce no slower than the
+     * step, and a Trip whose gather and deposit are no slower than the
+     * slowest gather and deposit of the trips of the step. Without trips a
+     * gather moved earlier also moves its deposit into the next step,
+     * whose length is not known yet, so gathers never sleep.
+     *
+     * Every peasant that idled through a step faced the same choices, so
+     * the sleep set is one mask per state: a bit per resource for peasants
+     * with status IDLE, and SLEEP_PRODUCE for an idle town hall. A peasant
+     * produced in the step is IDLE as well but could not have acted, so
+     * gathers are never put to sleep by a step that produces.
+     *
+     * With that, this is sound when the cost of a plan is its duration. The
+     * sleep set is not part of the state; see wake(GameState).
      */
-    public Set<GameState> initialChildren()
-    {
-        Set<StripsActionSet> initialActionSets;
-        initialActionSets = recursiveActionSets(initialActions(),
-                                                0,
-                                                new StripsActionSet(),
-                                                new HashSet<>());
-        return initialActionSets.stream()
-                                .map(s -> s.apply(this))
-                                .collect(Collectors.toSet());
-    }
-
-    public Set<StripsActionSet> recursiveActionSets(List<StripsAction> allActions,
-                                                    int iCurrentUnit,
-                                                    StripsActionSet inProgress,
-                                                    Set<StripsActionSet> finished)
-    {
-        for (StripsAction effect : allActions.get(iCurrentUnit).effects(this))
-            if (iCurrentUnit == allActions.size() - 1)
-                finished.add(inProgress);
-            else
+    private boolean isAsleep(int slot, StripsAction effect)
+    {
+        if (sleeping == 0 || getStatus(slot) != IDLE)
+            return false;
+        if (effect instanceof Gather)
+        {
+            int resource = ((Gather) effect).getGatherFrom().getSlot();
+            return slot != 0
+                    && resource < SLEEP_GATHERS
+                    && (sleeping & (1L << resource)) != 0;
+        }
+        return effect instanceof Produce && (sleeping & SLEEP_PRODUCE) != 0;
+    }
+
+    /*
+     * A production that cannot shorten the plan; see Produce.paysOff. Its
+     * children are left out. Putting Produce to sleep in them as well is
+     * harmless, since a plan that never produces is among the quickest.
+     */
+    private boolean isUnprofitable(StripsAction effect)
+    {
+        return effect instanceof Produce
+                && getProblem().prunesProduce()
+                && !((Produce) effect).paysOff(this);
+    }
+
+    // Gatherers is scratch space with one entry per resource
+    private long sleepingAfter(StripsActionSet step, int[] gatherers)
+    {
+        if (!getProblem().reducesOrder())
+            return 0;
+        boolean peasantIdles = false;
+        boolean townHallIdles = false;
+        boolean produces = false;
+        Arrays.fill(gatherers, 0);
+        for (StripsAction action : step.getActions())
+        {
+            if (action instanceof Idle)
+            {
+                if (((Idle) action).getUnit().getId() == 0)
+                    townHallIdles = true;
+                else
+                    peasantIdles = true;
+            }
+            else if (action instanceof Produce)
+            {
+                produces = true;
+            }
+            else if (action instanceof Gather)
             {
-                inProgress.getActions().add(effect);
-                recursiveActionSets(allActions,
-                                    iCurrentUnit + 1,
-                                    inProgress,
-                                    finished);
+                gatherers[((Gather) action).getGatherFrom().getSlot()]++;
             }
-        return finished;
+        }
+        long asleep = 0;
+        long slowest = step.computeActionsDuration(this);
+        long slowestDeposit = step.computeDepositsDuration(this);
+        if (peasantIdles && !produces && getProblem().usesTrips())
+            for (int r = 0; r < Math.min(gatherers.length, SLEEP_GATHERS); r++)
+                if ((long) gatherers[r] * Gather.AMOUNT < getRemaining(r)
+                        && getProblem().getGatherDuration(r) <= slowest
+                        && getProblem().getDepositDuration(r) <= slowestDeposit)
+                    asleep |= 1L << r;
+        if (townHallIdles
+                && getProblem().getProduceDuration() <= slowest
+                && getProblem().getProduce().preconditionsMet(this))
+            asleep |= SLEEP_PRODUCE;
+        return asleep;
+    }
+
+    /**
+     * Called when another path of the same cost reaches a state that is
+     * still open. Only actions asleep on both paths stay asleep, so the
+     * reduction never loses what either path would have explored.
+     *
+     * @param other Equal state reached by another path.
+     */
+    public void wake(GameState other)
+    {
+        if (other.getCost() <= getCost())
+            sleeping &= other.sleeping;
+    }
+
+    /**
+     * @return Mask of the actions that partial-order reduction keeps from
+     * being taken in this state.
+     */
+    public long getSleeping()
+    {
+        return sleeping;
+    }
+
+    /**
+     * @return For each unit, the action that left it in its current status.
+     * The effects of these actions are what each unit can do next.
+     */
+    public List<StripsAction> lastActions()
+    {
+        List<StripsAction> actions = new ArrayList<>(getUnitCount());
+        for (int slot = 0; slot < getUnitCount(); slot++)
+            actions.add(lastAction(getProblem().getUnit(slot)));
+        return actions;
     }
 
-    public List<StripsAction> initialActions()
+    private StripsAction lastAction(Unit unit)
     {
-        return getUnitTracker().getItems()
-                               .keySet()
-                               .stream()
-                               .map(Idle::new)
-                               .collect(Collectors.toList());
+        switch (getStatus(unit.getId()))
+        {
+            case GATHER:
+                Resource resource = getProblem().getResource(
+                        getCargo(unit.getId()));
+                return new Gather(unit, resource);
+            case DEPOSIT:
+                return new Deposit(unit, 0);
+            case PRODUCE:
+                return new Produce(unit,
+                                   unit.getGoldCostToProduce(),
+                                   unit.getWoodCostToProduce());
+            default:
+                return new Idle(unit);
+        }
+    }
+
+    /*
+     * Odometer over the effects each unit may take, as ids of the action
+     * table. The effects of a unit whose own preconditions fail are dropped
+     * up front; the rest of the joint preconditions are checked on a reused
+     * array of ids, which only becomes an action set when it yields a child.
+     */
+    private static class SuccessorIterator implements Iterator<GameState>
+    {
+        private final GameState parent;
+        private final ActionTable table;
+        private final int[][] choices;
+        private final int[] cursors;
+        private final int[] candidate;
+        private final int[] gatherers;
+        private GameState next;
+        private boolean exhausted;
+
+        private SuccessorIterator(GameState parent)
+        {
+            this.parent = parent;
+            this.table = parent.getProblem().getActionTable();
+            int units = parent.getUnitCount();
+            this.choices = new int[units][];
+            for (int slot = 0; slot < units; slot++)
+            {
+                int[] effects = table.getChoices(parent, slot);
+                int[] kept = new int[effects.length];
+                int count = 0;
+                for (int id : effects)
+                {
+                    StripsAction effect = table.get(id);
+                    if (effect.preconditionsMet(parent)
+                            && !parent.isAsleep(slot, effect)
+                            && !parent.isUnprofitable(effect))
+                        kept[count++] = id;
+                }
+                choices[slot] = Arrays.copyOf(kept, count);
+                exhausted |= count == 0;
+            }
+            this.cursors = new int[units];
+            this.candidate = new int[units];
+            this.gatherers = new int[parent.getProblem().getResources().size()];
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (next == null)
+                next = advance();
+            return next != null;
+        }
+
+        @Override
+        public GameState next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            GameState child = next;
+            next = null;
+            return child;
+        }
+
+        private GameState advance()
+        {
+            while (!exhausted)
+            {
+                for (int unit = 0; unit < cursors.length; unit++)
+                    candidate[unit] = choices[unit][cursors[unit]];
+                increment();
+                if (!isIdle() && canServeAll())
+                {
+                    StripsActionSet step = table.toActionSet(candidate);
+                    GameState child = step.apply(parent);
+                    child.sleeping = parent.sleepingAfter(step, gatherers);
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        private boolean isIdle()
+        {
+            for (int id : candidate)
+                if (!table.isIdle(id))
+                    return false;
+            return true;
+        }
+
+        // A resource must hold enough for every peasant that gathers from it
+        private boolean canServeAll()
+        {
+            Arrays.fill(gatherers, 0);
+            for (int id : candidate)
+            {
+                int resource = table.getResource(id);
+                if (resource != NONE
+                        && (long) gatherers[resource]++ * Gather.AMOUNT
+                        >= parent.getRemaining(resource))
+                    return false;
+            }
+            return true;
+        }
+
+        // The last unit turns fastest
+        private void increment()
+        {
+            for (int unit = cursors.length - 1; unit >= 0; unit--)
+            {
+                if (++cursors[unit] < choices[unit].length)
+                    return;
+                cursors[unit] = 0;
+            }
+            exhausted = true;
+        }
     }
 
     /**
@@ -252,228 +594,915 @@ public class GameState implements Comparable<GameState>
      * of computing a consistent heuristic that is even better, but not
      * strictly necessary.
      * <p>
-     * All this does is bias the agent against going over the resource goal.
-     * Otherwise we only consider the sum of all the distances of previous
-     * moves.
+     * The estimate comes from the {@link Heuristic} of the problem, a
+     * relaxed plan by default. It is computed the first time it is asked
+     * for and kept, so a search that defers evaluation never computes it
+     * for children that are not expanded.
      *
      * @return The value estimated remaining cost to reach a goal state from
      * this state.
      */
     public double heuristic()
     {
-        if (isGoal())
-            return 0;
-        return getResourceTracker().getDiffFromGoal();
+        if (Double.isNaN(heuristic))
+            heuristic = isGoal()
+                        ? 0
+                        : getProblem().getHeuristic().estimate(this);
+        return heuristic;
+    }
+
+    /**
+     * Computes the cost once the actions that create this state have been
+     * applied, so that the search never recomputes it, and forgets the
+     * heuristic. Must be called again if the state is changed after that.
+     */
+    public void evaluate()
+    {
+        cost = getCameFrom() == null
+               ? 0
+               : getCameFrom().getCost()
+                       + getCreationActions().computeDuration(getCameFrom());
+        heuristic = Double.NaN;
     }
 
     // STRIPS action
     public void gather(Unit peasant, Resource resource, int amount)
     {
-        getResourceTracker().adjustRemaining(resource, amount);
-        getUnitTracker().validateAndTrack(peasant, GATHER);
-        getVisitTracker().track(peasant, resource);
+        int slot = peasant.getId();
+        int taken = Math.min(amount, getRemaining(resource.getSlot()));
+        add(RESOURCES_INDEX + resource.getSlot(), -taken);
+        setUnit(slot, GATHER, resource.getSlot(), taken);
     }
 
     // STRIPS action
     public void deposit(Unit peasant, int amount)
     {
-        ResourceType type = getVisitTracker().getItems().get(peasant).getType();
-        getResourceTracker().adjustCurrent(type, amount);
-        getUnitTracker().validateAndTrack(peasant, DEPOSIT);
+        int slot = peasant.getId();
+        int deposited = Math.min(amount, getCarried(slot));
+        ResourceType type = getProblem().getResource(getCargo(slot)).getType();
+        add(type == GOLD ? GOLD_INDEX : WOOD_INDEX, deposited);
+        setUnit(slot, DEPOSIT, NONE, 0);
     }
 
     // STRIPS action
     public void produce(Unit townHall, int goldCost, int woodCost)
     {
-        getUnitTracker().createAndTrack(IDLE, GATHER, DEPOSIT);
-        getResourceTracker().adjustCurrent(GOLD, -goldCost);
-        getResourceTracker().adjustCurrent(WOOD, -woodCost);
-        getUnitTracker().validateAndTrack(townHall, PRODUCE);
+        data = Arrays.copyOf(data, data.length + UNIT_WIDTH);
+        for (int i = data.length - UNIT_WIDTH; i < data.length; i++)
+            hash += zobrist(i, 0);
+        setUnit(getUnitCount() - 1, IDLE, NONE, 0);
+        add(GOLD_INDEX, -goldCost);
+        add(WOOD_INDEX, -woodCost);
+        setUnit(townHall.getId(), PRODUCE, NONE, 0);
+    }
+
+    // STRIPS action
+    public void idle(Unit unit)
+    {
+        int slot = unit.getId();
+        setUnit(slot, IDLE, getCargo(slot), getCarried(slot));
+    }
+
+    public int getAmount(ResourceType type)
+    {
+        return type == GOLD ? getGold() : getWood();
+    }
+
+    public int getGold()
+    {
+        return data[GOLD_INDEX];
+    }
+
+    public int getWood()
+    {
+        return data[WOOD_INDEX];
+    }
+
+    public int getRemaining(int resourceSlot)
+    {
+        return data[RESOURCES_INDEX + resourceSlot];
+    }
+
+    public int getUnitCount()
+    {
+        return (data.length - unitsIndex()) / UNIT_WIDTH;
+    }
+
+    public StripsEnum getStatus(int unitSlot)
+    {
+        return STATUSES[data[unitIndex(unitSlot)] & STATUS_MASK];
+    }
+
+    /**
+     * @return Slot of the resource the unit carries from, or {@link #NONE}.
+     */
+    public int getCargo(int unitSlot)
+    {
+        return (data[unitIndex(unitSlot)] >>> STATUS_BITS) - 1;
+    }
+
+    public int getCarried(int unitSlot)
+    {
+        return data[unitIndex(unitSlot) + 1];
+    }
+
+    /**
+     * Puts the peasants in a canonical order so that states that only differ
+     * in which of two interchangeable peasants does what are equal. The town
+     * hall keeps slot 0 and the peasants are sorted by their code and then
+     * by what they carry, which makes the peasant section a sorted multiset
+     * of (status, resource, carried) records.
+     *
+     * @return For each new slot, the slot its unit had before, or null if no
+     * unit moved.
+     */
+    public int[] sortPeasants()
+    {
+        int count = getUnitCount();
+        int[] order = null;
+        for (int slot = 2; slot < count; slot++)
+        {
+            for (int moved = slot;
+                 moved > 1 && comparePeasants(moved - 1, moved) > 0;
+                 moved--)
+            {
+                if (order == null)
+                    order = IntStream.range(0, count).toArray();
+                swapUnits(moved - 1, moved);
+                int previous = order[moved - 1];
+                order[moved - 1] = order[moved];
+                order[moved] = previous;
+            }
+        }
+        return order;
+    }
+
+    private int comparePeasants(int slot, int other)
+    {
+        int index = unitIndex(slot);
+        int otherIndex = unitIndex(other);
+        int byCode = Integer.compare(data[index], data[otherIndex]);
+        if (byCode != 0)
+            return byCode;
+        return Integer.compare(data[index + 1], data[otherIndex + 1]);
+    }
+
+    private void swapUnits(int slot, int other)
+    {
+        int index = unitIndex(slot);
+        int otherIndex = unitIndex(other);
+        for (int i = 0; i < UNIT_WIDTH; i++)
+        {
+            int value = data[index + i];
+            set(index + i, data[otherIndex + i]);
+            set(otherIndex + i, value);
+        }
+    }
+
+    private void setUnit(int unitSlot,
+                         StripsEnum status,
+                         int cargo,
+                         int carried)
+    {
+        int index = unitIndex(unitSlot);
+        set(index, ((cargo + 1) << STATUS_BITS) | status.ordinal());
+        set(index + 1, carried);
+    }
+
+    /*
+     * Every write goes through here so that the hash follows the data.
+     */
+    private void set(int index, int value)
+    {
+        hash += zobrist(index, value) - zobrist(index, data[index]);
+        data[index] = value;
+    }
+
+    private void add(int index, int amount)
+    {
+        set(index, data[index] + amount);
+    }
+
+    /*
+     * Zobrist key of one word of the state holding one value. Amounts are
+     * unbounded, so instead of a table of random keys the key is a strong
+     * 64-bit mix (the SplitMix64 finalizer) of the index and the value.
+     */
+    private static long zobrist(int index, int value)
+    {
+        long z = ((long) index << 32 | (value & 0xFFFFFFFFL))
+                + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long zobrist(int[] data)
+    {
+        long hash = 0;
+        for (int i = 0; i < data.length; i++)
+            hash += zobrist(i, data[i]);
+        return hash;
+    }
+
+    private int unitsIndex()
+    {
+        return RESOURCES_INDEX + getProblem().getResources().size();
+    }
+
+    private int unitIndex(int unitSlot)
+    {
+        return unitsIndex() + unitSlot * UNIT_WIDTH;
+    }
+
+    /**
+     * Write the function that computes the current cost to get to this node.
+     * This is combined with your heuristic to
+     * determine which actions/states are better to explore.
+     *
+     * @return The current cost to reach this goal, the cost of the state it
+     * came from plus the duration of the actions that created it, in game
+     * steps.
+     */
+    public long getCost()
+    {
+        return cost;
+    }
+
+    /**
+     * @return The cost plus the heuristic, by which states are ordered.
+     */
+    public double getEstimate()
+    {
+        return getCost() + heuristic();
+    }
+
+    /**
+     * This is necessary to use your state in the Java priority queue. See
+     * the official priority queue and Comparable
+     * interface documentation to learn how this function should work.
+     *
+     * @param gameState The other game state to compare
+     * @return 1 if this state costs more than the other, 0 if equal, -1
+     * otherwise
+     */
+    @Override
+    public int compareTo(GameState gameState)
+    {
+        return Double.compare(getEstimate(), gameState.getEstimate());
+    }
+
+    /**
+     * This will be necessary to use the GameState as a key in a Set or Map.
+     * The data is only compared when the 64-bit hashes match.
+     *
+     * @param o The game state to compare
+     * @return True if this state equals the other state, false otherwise.
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        GameState gameState = (GameState) o;
+        return hash == gameState.hash
+                && getProblem() == gameState.getProblem()
+                && Arrays.equals(data, gameState.data);
+    }
+
+    /**
+     * This is necessary to use the GameState as a key in a HashSet or
+     * HashMap. Remember that if two objects are equal they should hash to
+     * the same value.
+     *
+     * @return An integer hashcode that is equal for equal states.
+     */
+    @Override
+    public int hashCode()
+    {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * @return Additive Zobrist hash of the state: the sum of a key for each
+     * word of the state and its value. Actions update it as they write, so
+     * it never has to be recomputed.
+     */
+    public long getZobristHash()
+    {
+        return hash;
+    }
+
+    @Override
+    public String toString()
+    {
+        String gold = "gold=" + getGold();
+        String wood = "wood=" + getWood();
+        String peas = "nPeasants = " + (getUnitCount() - 1);
+        String cost = "cost=" + getCost();
+        String heuristic = "heuristic=" + heuristic();
+        return "GameState{" + cost + ", " + heuristic + ", " + gold + ", " + wood + ", " + peas + "}";
+    }
+
+    public Problem getProblem()
+    {
+        return problem;
+    }
+
+    public UnitTracker getUnitTracker()
+    {
+        if (unitTracker == null)
+            unitTracker = new UnitTracker(this);
+        return unitTracker;
+    }
+
+    public ResourceTracker getResourceTracker()
+    {
+        if (resourceTracker == null)
+            resourceTracker = new ResourceTracker(this);
+        return resourceTracker;
+    }
+
+    public VisitTracker getVisitTracker()
+    {
+        if (visitTracker == null)
+            visitTracker = new VisitTracker(this);
+        return visitTracker;
+    }
+
+    public boolean considerBuildingPeasants()
+    {
+        return getProblem().considerBuildingPeasants();
+    }
+
+    public GameState getCameFrom()
+    {
+        return cameFrom;
+    }
+
+    public StripsActionSet getCreationActions()
+    {
+        return creationActions;
+    }
+
+    public void setCreationActions(StripsActionSet creationActions)
+    {
+        this.creationActions = creationActions;
+    }
+
+    /**
+     * Everything about a planning problem that does not change during the
+     * search. It is built once per search and shared by every GameState.
+     */
+    public static class Problem
+    {
+        private final List<Unit> units;
+        private final List<Resource> resources;
+        private final int[] initialRemaining;
+        private final Map<ResourceType, Integer> currentAmounts;
+        private final Goal<Integer> goal;
+        private final int requiredGold;
+        private final int requiredWood;
+        private final boolean buildPeasants;
+        private final boolean reduceOrder;
+        private final boolean trips;
+        private final boolean pruneProduce;
+        private final long[] gatherDurations;
+        private final long[] depositDurations;
+        private final long produceDuration;
+        private final Heuristic heuristic;
+        private final ActionTable actionTable;
+        private final Produce produce;
+        private final int[] goldSlots;
+        private final int[] woodSlots;
+
+        private Problem(ProblemBuilder builder)
+        {
+            this.units = builder.getUnits();
+            this.resources = builder.getResources();
+            this.initialRemaining = new int[resources.size()];
+            for (Resource resource : resources)
+                initialRemaining[resource.getSlot()] =
+                        builder.getRemaining().getOrDefault(resource, 0);
+            this.currentAmounts = builder.getCurrentAmounts();
+            this.goal = builder.getGoal();
+            this.requiredGold = requiredAmount("gold");
+            this.requiredWood = requiredAmount("wood");
+            this.buildPeasants = builder.considerBuildingPeasants();
+            this.reduceOrder = builder.reducesOrder();
+            this.trips = builder.usesTrips();
+            this.pruneProduce = builder.prunesProduce();
+            this.gatherDurations = new long[resources.size()];
+            this.depositDurations = new long[resources.size()];
+            for (Resource resource : resources)
+            {
+                long travel = builder.getMoveDuration()
+                        * (long) Math.ceil(resource.getDistanceToTownHall());
+                gatherDurations[resource.getSlot()] = travel
+                        + builder.getGatherDurations()
+                                 .getOrDefault(resource.getType(), 0);
+                depositDurations[resource.getSlot()] =
+                        travel + builder.getDepositDuration();
+            }
+            this.produceDuration = builder.getProduceDuration();
+            this.heuristic = builder.getHeuristic().apply(this);
+            this.actionTable = new ActionTable();
+            Unit townHall = units.get(0);
+            this.produce = new Produce(townHall,
+                                       townHall.getGoldCostToProduce(),
+                                       townHall.getWoodCostToProduce());
+            this.goldSlots = slotsOf(GOLD);
+            this.woodSlots = slotsOf(WOOD);
+        }
+
+        private int[] initialData()
+        {
+            int[] data = new int[RESOURCES_INDEX
+                                         + getResources().size()
+                                         + getUnits().size() * UNIT_WIDTH];
+            data[GOLD_INDEX] = getCurrentAmounts().getOrDefault(GOLD, 0);
+            data[WOOD_INDEX] = getCurrentAmounts().getOrDefault(WOOD, 0);
+            for (Resource resource : getResources())
+                data[RESOURCES_INDEX + resource.getSlot()] =
+                        getInitialRemaining(resource);
+            int unitsIndex = RESOURCES_INDEX + getResources().size();
+            for (Unit unit : getUnits())
+                data[unitsIndex + unit.getId() * UNIT_WIDTH] =
+                        unit.getInitialAction().ordinal();
+            return data;
+        }
+
+        /**
+         * @param slot Slot of a unit, which is also its id.
+         * @return The unit of the slot. Slots past the initial units belong
+         * to produced peasants.
+         */
+        public Unit getUnit(int slot)
+        {
+            if (slot < getUnits().size())
+                return getUnits().get(slot);
+            Unit peasant = getUnits().get(getUnits().size() - 1);
+            return new UnitBuilder().id(slot)
+                                    .validActions(GATHER, DEPOSIT)
+                                    .goldCostToProduce(
+                                            peasant.getGoldCostToProduce())
+                                    .woodCostToProduce(
+                                            peasant.getWoodCostToProduce())
+                                    .build();
+        }
+
+        public List<Unit> getUnits()
+        {
+            return units;
+        }
+
+        public Resource getResource(int slot)
+        {
+            return getResources().get(slot);
+        }
+
+        public List<Resource> getResources()
+        {
+            return resources;
+        }
+
+        /**
+         * @return Amount the resource held when the search started. What it
+         * holds in a state is {@link GameState#getRemaining(int)}.
+         */
+        public int getInitialRemaining(Resource resource)
+        {
+            return initialRemaining[resource.getSlot()];
+        }
+
+        public Map<ResourceType, Integer> getCurrentAmounts()
+        {
+            return currentAmounts;
+        }
+
+        public Goal<Integer> getGoal()
+        {
+            return goal;
+        }
+
+        public int getRequired(ResourceType type)
+        {
+            return type == GOLD ? requiredGold : requiredWood;
+        }
+
+        // Criteria of the goal, read once so that goal tests need no maps
+        private int requiredAmount(String label)
+        {
+            Criterion<Integer> criterion = getGoal().getCriteria().get(label);
+            return criterion == null ? 0 : criterion.getObjective();
+        }
+
+        public boolean considerBuildingPeasants()
+        {
+            return buildPeasants;
+        }
+
+        /**
+         * @return True if successors are pruned by partial-order reduction.
+         */
+        public boolean reducesOrder()
+        {
+            return reduceOrder;
+        }
+
+        /**
+         * @return True if peasants gather and deposit in one {@link Trip}
+         * instead of two steps.
+         */
+        public boolean usesTrips()
+        {
+            return trips;
+        }
+
+        /**
+         * @return True if productions that cannot shorten the plan are
+         * pruned; see {@link Produce#paysOff(GameState)}.
+         */
+        public boolean prunesProduce()
+        {
+            return pruneProduce;
+        }
+
+        /**
+         * Durations are looked up in tables that are filled once, when the
+         * problem is built. Peasants are the only units that gather, so a
+         * table has one entry per resource.
+         *
+         * @return Game steps a peasant takes to walk from the town hall to
+         * the resource and gather from it.
+         */
+        public long getGatherDuration(int resourceSlot)
+        {
+            return gatherDurations[resourceSlot];
+        }
+
+        /**
+         * @return Game steps a peasant takes to walk back from the resource
+         * and deposit at the town hall.
+         */
+        public long getDepositDuration(int resourceSlot)
+        {
+            return depositDurations[resourceSlot];
+        }
+
+        /**
+         * @return Game steps the town hall takes to produce a peasant.
+         */
+        public long getProduceDuration()
+        {
+            return produceDuration;
+        }
+
+        public Heuristic getHeuristic()
+        {
+            return heuristic;
+        }
+
+        /**
+         * @return The ids of the actions of this problem, shared by every
+         * state of a search.
+         */
+        public ActionTable getActionTable()
+        {
+            return actionTable;
+        }
+
+        /**
+         * @return The production of a peasant by the town hall, shared by
+         * every state.
+         */
+        public Produce getProduce()
+        {
+            return produce;
+        }
+
+        /**
+         * @return Slots of the resources of the type, in slot order. The
+         * array is shared and must not be changed.
+         */
+        public int[] getResourceSlots(ResourceType type)
+        {
+            return type == GOLD ? goldSlots : woodSlots;
+        }
+
+        private int[] slotsOf(ResourceType type)
+        {
+            return resources.stream()
+                            .filter(r -> r.getType() == type)
+                            .mapToInt(Resource::getSlot)
+                            .sorted()
+                            .toArray();
+        }
     }
 
-    // STRIPS action
-    public void idle(Unit unit)
-    {
-        getUnitTracker().validateAndTrack(unit, IDLE);
-    }
+    public static class ProblemBuilder
+    {
+        private List<Unit> units;
+        private List<Resource> resources;
+        private Map<Resource, Integer> remaining;
+        private Map<ResourceType, Integer> currentAmounts;
+        private Goal<Integer> goal;
+        private boolean buildPeasants;
+        private boolean reduceOrder;
+        private boolean trips;
+        private boolean pruneProduce;
+        private int moveDuration;
+        private Map<ResourceType, Integer> gatherDurations;
+        private int depositDuration;
+        private int produceDuration;
+        private Function<Problem, Heuristic> heuristic;
+
+        public ProblemBuilder()
+        {
+            this.units = new ArrayList<>();
+            this.resources = new ArrayList<>();
+            this.remaining = new HashMap<>();
+            this.currentAmounts = new EnumMap<>(ResourceType.class);
+            this.goal = new GoalBuilder<Integer>().build();
+            this.buildPeasants = false;
+            this.reduceOrder = true;
+            this.trips = false;
+            this.pruneProduce = true;
+            this.moveDuration = 1;
+            this.gatherDurations = new EnumMap<>(ResourceType.class);
+            this.gatherDurations.put(GOLD, 1);
+            this.gatherDurations.put(WOOD, 1);
+            this.depositDuration = 1;
+            this.produceDuration = 1;
+            this.heuristic = p -> new RelaxedPlanHeuristic(
+                    p, RelaxedPlanHeuristic.Mode.FF);
+        }
+
+        public Problem build()
+        {
+            return new Problem(this);
+        }
+
+        public ProblemBuilder units(List<Unit> units)
+        {
+            setUnits(units);
+            return this;
+        }
+
+        public ProblemBuilder resources(List<Resource> resources)
+        {
+            setResources(resources);
+            return this;
+        }
+
+        public ProblemBuilder remaining(Resource resource, int amount)
+        {
+            getRemaining().put(resource, amount);
+            return this;
+        }
+
+        public ProblemBuilder currentAmount(ResourceType type, int amount)
+        {
+            getCurrentAmounts().put(type, amount);
+            return this;
+        }
+
+        public ProblemBuilder goal(Goal<Integer> goal)
+        {
+            setGoal(goal);
+            return this;
+        }
+
+        public ProblemBuilder buildPeasants(boolean buildPeasants)
+        {
+            setBuildPeasants(buildPeasants);
+            return this;
+        }
+
+        public ProblemBuilder reduceOrder(boolean reduceOrder)
+        {
+            setReduceOrder(reduceOrder);
+            return this;
+        }
+
+        public ProblemBuilder trips(boolean trips)
+        {
+            setTrips(trips);
+            return this;
+        }
+
+        public ProblemBuilder pruneProduce(boolean pruneProduce)
+        {
+            setPruneProduce(pruneProduce);
+            return this;
+        }
+
+        /**
+         * @param moveDuration Game steps a peasant takes to move one tile.
+         */
+        public ProblemBuilder moveDuration(int moveDuration)
+        {
+            setMoveDuration(moveDuration);
+            return this;
+        }
+
+        /**
+         * @param duration Game steps a peasant takes to gather at a resource
+         *                 of the type, once it is there.
+         */
+        public ProblemBuilder gatherDuration(ResourceType type, int duration)
+        {
+            getGatherDurations().put(type, duration);
+            return this;
+        }
+
+        /**
+         * @param depositDuration Game steps a peasant takes to deposit, once
+         *                        it is at the town hall.
+         */
+        public ProblemBuilder depositDuration(int depositDuration)
+        {
+            setDepositDuration(depositDuration);
+            return this;
+        }
+
+        /**
+         * @param produceDuration Game steps the town hall takes to produce a
+         *                        peasant.
+         */
+        public ProblemBuilder produceDuration(int produceDuration)
+        {
+            setProduceDuration(produceDuration);
+            return this;
+        }
+
+        /**
+         * @param heuristic Builds the heuristic from the finished problem.
+         */
+        public ProblemBuilder heuristic(Function<Problem, Heuristic> heuristic)
+        {
+            setHeuristic(heuristic);
+            return this;
+        }
+
+        public List<Unit> getUnits()
+        {
+            return units;
+        }
+
+        public void setUnits(List<Unit> units)
+        {
+            this.units = units;
+        }
+
+        public List<Resource> getResources()
+        {
+            return resources;
+        }
+
+        public void setResources(List<Resource> resources)
+        {
+            this.resources = resources;
+        }
+
+        public Map<Resource, Integer> getRemaining()
+        {
+            return remaining;
+        }
 
-    /**
-     * Write the function that computes the current cost to get to this node.
-     * This is combined with your heuristic to
-     * determine which actions/states are better to explore.
-     *
-     * @return The current cost to reach this goal
-     */
-    public double getCost()
-    {
-        return getCreationActions().computeCostFactor();
-    }
+        public Map<ResourceType, Integer> getCurrentAmounts()
+        {
+            return currentAmounts;
+        }
 
-    /**
-     * This is necessary to use your state in the Java priority queue. See
-     * the official priority queue and Comparable
-     * interface documentation to learn how this function should work.
-     *
-     * @param gameState The other game state to compare
-     * @return 1 if this state costs more than the other, 0 if equal, -1
-     * otherwise
-     */
-    @Override
-    public int compareTo(GameState gameState)
-    {
-        double thisEvalCost = getCost() + heuristic();
-        double thatEvalCost = gameState.getCost() + gameState.heuristic();
-        return Double.compare(thisEvalCost, thatEvalCost);
-    }
+        public Goal<Integer> getGoal()
+        {
+            return goal;
+        }
 
-    /**
-     * This will be necessary to use the GameState as a key in a Set or Map.
-     *
-     * @param o The game state to compare
-     * @return True if this state equals the other state, false otherwise.
-     */
-    // TODO Make sure this is efficient -- what is considered equal and
-    //  hashed will effect number of GameStates to consider
-    @Override
-    public boolean equals(Object o)
-    {
-        if (this == o)
-            return true;
-        if (o == null || getClass() != o.getClass())
-            return false;
-        GameState gameState = (GameState) o;
-        boolean equalResources =
-                getResourceTracker().equals(gameState.getResourceTracker());
-        boolean equalUnits =
-                getUnitTracker().equals(gameState.getUnitTracker());
-        return equalResources && equalUnits;
-    }
+        public void setGoal(Goal<Integer> goal)
+        {
+            this.goal = goal;
+        }
 
-    /**
-     * This is necessary to use the GameState as a key in a HashSet or
-     * HashMap. Remember that if two objects are equal they should hash to
-     * the same value.
-     *
-     * @return An integer hashcode that is equal for equal states.
-     */
-    @Override
-    public int hashCode()
-    {
-        return Objects.hash(getUnitTracker(), getResourceTracker());
-    }
+        public boolean considerBuildingPeasants()
+        {
+            return buildPeasants;
+        }
 
-    @Override
-    public String toString()
-    {
-        String gold = "gold=" + getResourceTracker().getCurrentAmount(GOLD);
-        String wood = "wood=" + getResourceTracker().getCurrentAmount(WOOD);
-        String peas = "nPeasants = " + (getUnitTracker().getItems().size() - 1);
-        String cost = "cost=" + getCost();
-        String heuristic = "heuristic=" + heuristic();
-        return "GameState{" + cost + ", " + heuristic + ", " + gold + ", " + wood + ", " + peas + "}";
-    }
+        public void setBuildPeasants(boolean buildPeasants)
+        {
+            this.buildPeasants = buildPeasants;
+        }
 
-    public UnitTracker getUnitTracker()
-    {
-        return unitTracker;
-    }
+        public boolean reducesOrder()
+        {
+            return reduceOrder;
+        }
 
-    public ResourceTracker getResourceTracker()
-    {
-        return resourceTracker;
-    }
+        public void setReduceOrder(boolean reduceOrder)
+        {
+            this.reduceOrder = reduceOrder;
+        }
 
-    public VisitTracker getVisitTracker()
-    {
-        return visitTracker;
-    }
+        public boolean usesTrips()
+        {
+            return trips;
+        }
 
-    public boolean considerBuildingPeasants()
-    {
-        return buildPeasants;
-    }
+        public void setTrips(boolean trips)
+        {
+            this.trips = trips;
+        }
 
-    public GameState getCameFrom()
-    {
-        return cameFrom;
-    }
+        public boolean prunesProduce()
+        {
+            return pruneProduce;
+        }
 
-    public static class UnitTrackerBuilder
-    {
-        private List<Unit> units;
-        private List<StripsEnum> statuses;
+        public void setPruneProduce(boolean pruneProduce)
+        {
+            this.pruneProduce = pruneProduce;
+        }
 
-        public UnitTrackerBuilder()
+        public int getMoveDuration()
         {
-            this.units = new ArrayList<>();
-            this.statuses = new ArrayList<>();
+            return moveDuration;
         }
 
-        public UnitTracker build()
+        public void setMoveDuration(int moveDuration)
         {
-            return new UnitTracker(this);
+            this.moveDuration = moveDuration;
         }
 
-        public UnitTrackerBuilder units(List<Unit> units)
+        public Map<ResourceType, Integer> getGatherDurations()
         {
-            setUnits(units);
-            List<StripsEnum> statuses = units.stream()
-                                             .map(Unit::getInitialAction)
-                                             .collect(Collectors.toList());
-            setStatuses(statuses);
-            return this;
+            return gatherDurations;
         }
 
-        public List<Unit> getUnits()
+        public int getDepositDuration()
         {
-            return units;
+            return depositDuration;
         }
 
-        public void setUnits(List<Unit> units)
+        public void setDepositDuration(int depositDuration)
         {
-            this.units = units;
+            this.depositDuration = depositDuration;
         }
 
-        public List<StripsEnum> getStatuses()
+        public int getProduceDuration()
         {
-            return statuses;
+            return produceDuration;
         }
 
-        public void setStatuses(List<StripsEnum> statuses)
+        public void setProduceDuration(int produceDuration)
         {
-            this.statuses = statuses;
+            this.produceDuration = produceDuration;
         }
-    }
 
-    public StripsActionSet getCreationActions()
-    {
-        return creationActions;
+        public Function<Problem, Heuristic> getHeuristic()
+        {
+            return heuristic;
+        }
+
+        public void setHeuristic(Function<Problem, Heuristic> heuristic)
+        {
+            this.heuristic = heuristic;
+        }
     }
 
+    // Status of every unit
     public static class UnitTracker extends Tracker<Unit, StripsEnum>
     {
-        private UnitTracker(UnitTrackerBuilder builder)
+        private UnitTracker(GameState state)
         {
-            super(builder.getUnits(), builder.getStatuses());
+            super(state);
         }
 
-        private UnitTracker(UnitTracker tracker)
+        @Override
+        public List<Unit> getTracked()
         {
-            super(new HashMap<>(tracker.getItems()));
+            return IntStream.range(0, getState().getUnitCount())
+                            .mapToObj(getState().getProblem()::getUnit)
+                            .collect(Collectors.toList());
         }
 
-        public UnitTracker copy()
+        @Override
+        public StripsEnum get(Unit unit)
         {
-            return new UnitTracker(this);
+            return getState().getStatus(unit.getId());
         }
 
-        public void createAndTrack(StripsEnum initialAction,
-                                   StripsEnum... validActions)
+        @Override
+        public void track(Unit unit, StripsEnum status)
         {
-            Unit newUnit = new UnitBuilder().validActions(validActions)
-                                            .initialAction(initialAction)
-                                            .build();
-            validateAndTrack(newUnit, initialAction);
+            int slot = unit.getId();
+            getState().setUnit(slot,
+                               status,
+                               getState().getCargo(slot),
+                               getState().getCarried(slot));
         }
 
         public void validateAndTrack(Unit unit, StripsEnum status)
@@ -485,6 +1514,7 @@ public class GameState implements Comparable<GameState>
 
     public static class UnitBuilder
     {
+        private int id;
         private EnumSet<StripsEnum> validActions;
         private StripsEnum initialAction;
         private int goldCostToProduce;
@@ -492,6 +1522,7 @@ public class GameState implements Comparable<GameState>
 
         public UnitBuilder()
         {
+            this.id = 0;
             this.validActions = EnumSet.noneOf(StripsEnum.class);
             this.initialAction = null;
             this.goldCostToProduce = 0;
@@ -506,13 +1537,24 @@ public class GameState implements Comparable<GameState>
             return new Unit(this);
         }
 
+        /**
+         * Builds units with consecutive ids, starting from the id of this
+         * builder.
+         */
         public List<Unit> build(int nCopies)
         {
+            int first = getId();
             return IntStream.range(0, nCopies)
-                            .mapToObj(i -> build())
+                            .mapToObj(i -> id(first + i).build())
                             .collect(Collectors.toList());
         }
 
+        public UnitBuilder id(int id)
+        {
+            setId(id);
+            return this;
+        }
+
         public UnitBuilder validActions(StripsEnum... validActions)
         {
             EnumSet<StripsEnum> valid = EnumSet.noneOf(StripsEnum.class);
@@ -539,6 +1581,16 @@ public class GameState implements Comparable<GameState>
             return this;
         }
 
+        public int getId()
+        {
+            return id;
+        }
+
+        public void setId(int id)
+        {
+            this.id = id;
+        }
+
         public EnumSet<StripsEnum> getValidActions()
         {
             return validActions;
@@ -580,11 +1632,10 @@ public class GameState implements Comparable<GameState>
         }
     }
 
-    // Handles auto generating id. Mapping GameState to SEPIA peasants
-    // is handled in PEAgent.
+    // The id of a unit is its slot in the GameState. Mapping GameState to
+    // SEPIA peasants is handled in PEAgent.
     public static class Unit
     {
-        private static int lastAssignedId = 0;
         private final int id;
         private final int goldCostToProduce;
         private final int woodCostToProduce;
@@ -593,10 +1644,10 @@ public class GameState implements Comparable<GameState>
 
         private Unit(UnitBuilder builder)
         {
-            this.id = getNewId();
+            this.id = builder.getId();
             this.goldCostToProduce = builder.getGoldCostToProduce();
             this.woodCostToProduce = builder.getWoodCostToProduce();
-            this.validActions = builder.getValidActions();
+            this.validActions = EnumSet.copyOf(builder.getValidActions());
             this.initialAction = builder.getInitialAction();
         }
 
@@ -614,13 +1665,6 @@ public class GameState implements Comparable<GameState>
             return new Unit(this);
         }
 
-        private static int getNewId()
-        {
-            int newId = getLastAssignedId() + 1;
-            setLastAssignedId(newId);
-            return newId;
-        }
-
         public int getId()
         {
             return id;
@@ -646,16 +1690,6 @@ public class GameState implements Comparable<GameState>
             return initialAction;
         }
 
-        private static int getLastAssignedId()
-        {
-            return lastAssignedId;
-        }
-
-        private static void setLastAssignedId(int lastAssigned)
-        {
-            lastAssignedId = lastAssigned;
-        }
-
         @Override
         public boolean equals(Object o)
         {
@@ -687,134 +1721,83 @@ public class GameState implements Comparable<GameState>
         }
     }
 
-    private static class VisitTracker extends Tracker<Unit, Resource>
-    {
-
-        public VisitTracker(VisitTracker visitTracker)
-        {
-            super(visitTracker);
-        }
-
-        public VisitTracker()
-        {
-            super(new HashMap<>());
-        }
-
-        public VisitTracker copy()
-        {
-            return new VisitTracker(this);
-        }
-    }
-
-    private static class ResourceTrackerBuilder
+    // Resource each unit last gathered from, while it still carries it
+    public static class VisitTracker extends Tracker<Unit, Resource>
     {
-        private Goal<Integer> goal;
-        private Map<ResourceType, Integer> currentAmounts;
-        private Map<Resource, Integer> resources;
-
-        public ResourceTrackerBuilder()
-        {
-            this.goal = new GoalBuilder<Integer>().build();
-            this.currentAmounts = new EnumMap<>(ResourceType.class);
-        }
-
-        public ResourceTrackerBuilder goal(Goal<Integer> goal)
-        {
-            setGoal(goal);
-            return this;
-        }
-
-        public ResourceTracker build()
-        {
-            return new ResourceTracker(this);
-        }
-
-        public ResourceTrackerBuilder currentAmount(ResourceType type,
-                                                    int amount)
-        {
-            getCurrentAmounts().put(type, amount);
-            return this;
-        }
-
-        public ResourceTrackerBuilder resources(Map<Resource, Integer> resources)
-        {
-            setResources(resources);
-            return this;
-        }
-
-        public Goal<Integer> getGoal()
-        {
-            return goal;
-        }
-
-        public void setGoal(Goal<Integer> goal)
+        private VisitTracker(GameState state)
         {
-            this.goal = goal;
+            super(state);
         }
 
-        public Map<ResourceType, Integer> getCurrentAmounts()
+        @Override
+        public List<Unit> getTracked()
         {
-            return currentAmounts;
+            return getState().getUnitTracker().getTracked();
         }
 
-        public Map<Resource, Integer> getResources()
+        @Override
+        public Resource get(Unit unit)
         {
-            return resources;
+            int cargo = getState().getCargo(unit.getId());
+            return cargo == NONE
+                   ? null
+                   : getState().getProblem().getResource(cargo);
         }
 
-        public void setResources(Map<Resource, Integer> resources)
+        @Override
+        public void track(Unit unit, Resource resource)
         {
-            this.resources = resources;
+            int slot = unit.getId();
+            getState().setUnit(slot,
+                               getState().getStatus(slot),
+                               resource == null ? NONE : resource.getSlot(),
+                               getState().getCarried(slot));
         }
     }
 
     // Integer = amount remaining
     public static class ResourceTracker extends Tracker<Resource, Integer>
     {
-        private Goal<Integer> goal;
-        private Map<ResourceType, Integer> currentAmounts;
+        private ResourceTracker(GameState state)
+        {
+            super(state);
+        }
 
-        private ResourceTracker(ResourceTrackerBuilder builder)
+        @Override
+        public List<Resource> getTracked()
         {
-            super(builder.getResources());
-            this.goal = builder.getGoal();
-            this.currentAmounts = builder.getCurrentAmounts();
+            return getState().getProblem().getResources();
         }
 
-        private ResourceTracker(ResourceTracker resourceTracker)
+        @Override
+        public Integer get(Resource resource)
         {
-            super(resourceTracker);
-            this.goal = resourceTracker.getGoal().copy();
-            this.currentAmounts =
-                    new HashMap<>(resourceTracker.getCurrentAmounts());
+            return getState().getRemaining(resource.getSlot());
         }
 
-        public ResourceTracker copy()
+        @Override
+        public void track(Resource resource, Integer remaining)
         {
-            return new ResourceTracker(this);
+            getState().set(RESOURCES_INDEX + resource.getSlot(), remaining);
         }
 
         public boolean isGoalSatisfied()
         {
-            Map<String, Integer> test = new HashMap<>();
-            test.put("gold", getCurrentAmount(GOLD));
-            test.put("wood", getCurrentAmount(WOOD));
-            return getGoal().isSatisfied(test);
+            return getState().isGoal();
         }
 
         public int getDiffFromGoal()
         {
-            int goalGold = getGoal().getCriteria().get("gold").getObjective();
-            int goalWood = getGoal().getCriteria().get("wood").getObjective();
-            int goldDiff = goalGold - getCurrentAmount(GOLD);
-            int woodDiff = goalWood - getCurrentAmount(WOOD);
-            return goldDiff + woodDiff;
+            int goldDiff = getState().getProblem().getRequired(GOLD)
+                    - getCurrentAmount(GOLD);
+            int woodDiff = getState().getProblem().getRequired(WOOD)
+                    - getCurrentAmount(WOOD);
+            return Math.max(goldDiff, 0) + Math.max(woodDiff, 0);
         }
 
         public void adjustRemaining(Resource resource, int amount)
         {
-            resource.adjustRemaining(amount);
-            getItems().put(resource, resource.getRemaining());
+            track(resource, get(resource) + amount);
         }
 
         public boolean hasEnough(ResourceType type, int amount)
@@ -822,48 +1805,58 @@ public class GameState implements Comparable<GameState>
             return getCurrentAmount(type) >= amount;
         }
 
-        public Set<Resource> getResources()
+        public List<Resource> getResources()
         {
-            return getItems().keySet();
+            return getTracked();
         }
 
         public Goal<Integer> getGoal()
         {
-            return goal;
+            return getState().getProblem().getGoal();
         }
 
         public int getCurrentAmount(ResourceType type)
         {
-            return getCurrentAmounts().get(type);
+            return getState().getAmount(type);
         }
 
         public Map<ResourceType, Integer> getCurrentAmounts()
         {
-            return currentAmounts;
+            Map<ResourceType, Integer> amounts =
+                    new EnumMap<>(ResourceType.class);
+            amounts.put(GOLD, getCurrentAmount(GOLD));
+            amounts.put(WOOD, getCurrentAmount(WOOD));
+            return amounts;
         }
 
         public void adjustCurrent(ResourceType type, int adjust)
         {
-            getCurrentAmounts().merge(type, 0, (c, a) -> c - adjust);
+            getState().add(type == GOLD ? GOLD_INDEX : WOOD_INDEX, adjust);
         }
     }
 
-    public static class Resource implements Comparable<Resource>
+    /**
+     * Immutable description of a SEPIA resource. The amount a resource has
+     * left changes during the search, so it is kept in each GameState and
+     * the amount at the start in the {@link Problem}. Nothing here changes,
+     * so one instance is shared by every state and every thread of a search.
+     */
+    public static final class Resource implements Comparable<Resource>
     {
+        private final int slot;
         private final int id;
         private final ResourceType type;
         private final double distanceToTownHall;
-        private int remaining;
 
-        public Resource(int id,
+        public Resource(int slot,
+                        int id,
                         ResourceType type,
-                        double distanceToTownHall,
-                        int remaining)
+                        double distanceToTownHall)
         {
+            this.slot = slot;
             this.id = id;
             this.type = type;
             this.distanceToTownHall = distanceToTownHall;
-            this.remaining = remaining;
         }
 
         @Override
@@ -873,6 +1866,14 @@ public class GameState implements Comparable<GameState>
                                   r.getDistanceToTownHall());
         }
 
+        /**
+         * @return Index of the resource in the GameStates of a search.
+         */
+        public int getSlot()
+        {
+            return slot;
+        }
+
         public int getId()
         {
             return id;
@@ -888,21 +1889,6 @@ public class GameState implements Comparable<GameState>
             return distanceToTownHall;
         }
 
-        public int getRemaining()
-        {
-            return remaining;
-        }
-
-        public void adjustRemaining(int remaining)
-        {
-            setRemaining(getRemaining() + remaining);
-        }
-
-        public void setRemaining(int remaining)
-        {
-            this.remaining = remaining;
-        }
-
         @Override
         public boolean equals(Object o)
         {
@@ -921,35 +1907,28 @@ public class GameState implements Comparable<GameState>
         }
     }
 
-    // <T, S> = item type, status
-    private static class Tracker<T, S>
+    /**
+     * A view of one aspect of a GameState in which the tracked items are
+     * keys and their statuses are values. Reads and writes go straight to
+     * the packed state, so a tracker costs nothing to copy.
+     *
+     * @param <T> Type of the tracked items.
+     * @param <S> Type of their statuses.
+     */
+    private abstract static class Tracker<T, S>
     {
-        private Map<T, S> items;
+        private final GameState state;
 
-        public Tracker(Map<T, S> items)
+        private Tracker(GameState state)
         {
-            this.items = items;
+            this.state = state;
         }
 
-        public Tracker(Tracker<T, S> tracker)
-        {
-            this.items = new HashMap<>(tracker.getItems());
-        }
+        public abstract List<T> getTracked();
 
-        public Tracker(Iterable<T> items, Iterable<S> statuses)
-        {
-            Map<T, S> itemMap = new HashMap<>();
-            Iterator<T> itemsIter = items.iterator();
-            Iterator<S> statusIter = statuses.iterator();
-            while (itemsIter.hasNext() && statusIter.hasNext())
-                itemMap.put(itemsIter.next(), statusIter.next());
-            this.items = itemMap;
-        }
+        public abstract S get(T item);
 
-        public void track(T item, S statusFirst)
-        {
-            getItems().put(item, statusFirst);
-        }
+        public abstract void track(T item, S status);
 
         @SafeVarargs
         public final boolean containsAnyValue(S... s)
@@ -959,35 +1938,32 @@ public class GameState implements Comparable<GameState>
 
         public boolean containsValue(S s)
         {
-            return getItems().containsValue(s);
+            for (T item : getTracked())
+                if (Objects.equals(get(item), s))
+                    return true;
+            return false;
         }
 
+        /**
+         * @return A snapshot of the tracked items and their statuses.
+         */
         public Map<T, S> getItems()
         {
+            Map<T, S> items = new LinkedHashMap<>();
+            for (T item : getTracked())
+                items.put(item, get(item));
             return items;
         }
 
-        @Override
-        public String toString()
-        {
-            return "Tracker{" + "items=" + items + '}';
-        }
-
-        @Override
-        public boolean equals(Object o)
+        protected GameState getState()
         {
-            if (this == o)
-                return true;
-            if (o == null || getClass() != o.getClass())
-                return false;
-            Tracker<?, ?> tracker = (Tracker<?, ?>) o;
-            return Objects.equals(getItems(), tracker.getItems());
+            return state;
         }
 
         @Override
-        public int hashCode()
+        public String toString()
         {
-            return Objects.hash(getItems());
+            return "Tracker{" + "items=" + getItems() + '}';
         }
     }
 
@@ -1005,7 +1981,7 @@ public class GameState implements Comparable<GameState>
      *
      * @param <T> Type each Criterion implements.
      */
-    private static class Goal<T> implements Satisfiable<T>
+    public static class Goal<T extends Comparable<T>> implements Satisfiable<T>
     {
         private Map<String, Criterion<T>> criteria;
 
@@ -1083,7 +2059,7 @@ public class GameState implements Comparable<GameState>
      *
      * @param <T> Type of Criterion that comprises the Goal.
      */
-    private static class GoalBuilder<T>
+    public static class GoalBuilder<T extends Comparable<T>>
     {
         private Map<String, Criterion<T>> criteria;
 
@@ -1116,12 +2092,14 @@ public class GameState implements Comparable<GameState>
      * An abstraction of one part of a goal. A goal is comprised of one or
      * more criterion, each with a name and an objective value. Implementing
      * the Satisfiable interface, a Criterion is satisfied if the test value
-     * supplied is equal to the objective value.
+     * supplied is at least the objective value; collecting more than
+     * required still meets the goal.
      * <p>
      *
      * @param <T> Type of the criterion objective.
      */
-    private static class Criterion<T> implements Satisfiable<T>
+    private static class Criterion<T extends Comparable<T>>
+            implements Satisfiable<T>
     {
         private final String id;
         private T objective;
@@ -1148,7 +2126,7 @@ public class GameState implements Comparable<GameState>
         {
             boolean satisfied = false;
             if (test.containsKey(getId()))
-                satisfied = test.get(getId()).equals(getObjective());
+                satisfied = test.get(getId()).compareTo(getObjective()) >= 0;
             return satisfied;
         }
 
@@ -1188,7 +2166,7 @@ public class GameState implements Comparable<GameState>
      *
      * @param <T> Type of objective that defines the Criterion.
      */
-    private static class CriterionBuilder<T>
+    private static class CriterionBuilder<T extends Comparable<T>>
     {
         private String id;
         private T objective;
@@ -0,0 +1,91 @@
+package edu.cwru.sepia.agent.planner;
+
+import java.util.*;
+
+/**
+ * Greedy best-first search with deferred evaluation. A child is put in the
+ * open set under the heuristic of its parent and its own heuristic is only
+ * computed when it is taken out. Branching is high and most children are
+ * never expanded, so this saves most heuristic calls at the price of a
+ * coarser order.
+ * <p>
+ * The cost of a path is ignored and every state is opened at most once, so
+ * the plan is found quickly but is not optimal.
+ */
+public class GreedyBestFirstSearch
+{
+    private int expanded;
+    private int evaluated;
+
+    /**
+     * @return A goal state, or null if no goal can be reached.
+     */
+    public GameState search(GameState start)
+    {
+        PriorityQueue<Entry> open = new PriorityQueue<>();
+        Set<GameState> seen = new HashSet<>();
+        long order = 0;
+        expanded = 0;
+        evaluated = 0;
+        open.add(new Entry(start, 0, order++));
+        seen.add(start);
+        while (!open.isEmpty())
+        {
+            GameState state = open.poll().state;
+            if (state.isGoal())
+                return state;
+            double heuristic = state.heuristic();
+            evaluated++;
+            if (heuristic == Double.POSITIVE_INFINITY)
+                continue;
+            expanded++;
+            Iterator<GameState> children = state.successors();
+            while (children.hasNext())
+            {
+                GameState child = children.next();
+                if (seen.add(child))
+                    open.add(new Entry(child, heuristic, order++));
+            }
+        }
+        return null;
+    }
+
+    public int getExpanded()
+    {
+        return expanded;
+    }
+
+    /**
+     * @return Number of states whose heuristic was computed by the last
+     * search.
+     */
+    public int getEvaluated()
+    {
+        return evaluated;
+    }
+
+    /*
+     * Open state keyed by the heuristic of its parent, first in first out
+     * among equal keys.
+     */
+    private static class Entry implements Comparable<Entry>
+    {
+        private final GameState state;
+        private final double key;
+        private final long order;
+
+        private Entry(GameState state, double key, long order)
+        {
+            this.state = state;
+            this.key = key;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Entry entry)
+        {
+            int byKey = Double.compare(key, entry.key);
+            return byKey != 0 ? byKey : Long.compare(order, entry.order);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package edu.cwru.sepia.agent.planner;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hash-distributed A* (HDA*). Every state is owned by one worker, chosen by
+ * its Zobrist hash, and only its owner opens, closes or expands it. Each
+ * worker has its own open and closed sets and an inbox that the others
+ * send it the children it owns through, so workers never share a lock.
+ * <p>
+ * A goal is not the end of the search. It becomes the incumbent if it is
+ * cheaper than the one found so far, and states whose f is not below the
+ * cost of the incumbent are no longer expanded. The search ends when every
+ * worker has nothing left below that bound and no state is on its way to
+ * a worker. The incumbent is then optimal if the heuristic is admissible.
+ * <p>
+ * Termination is detected with one counter: the workers that are active
+ * plus the states sent but not yet received. A state is counted before it
+ * is sent. A worker counts itself before it takes states from its inbox,
+ * and uncounts itself only when it is out of work. So the counter is zero
+ * exactly when no work is left, and the worker that brings it to zero ends
+ * the search.
+ */
+public class HashDistributedAstar
+{
+    private final int threads;
+    private final Worker[] workers;
+    private final AtomicLong work;
+    private final AtomicReference<GameState> incumbent;
+    private volatile boolean done;
+
+    /**
+     * @param threads Number of workers, each on its own thread.
+     */
+    public HashDistributedAstar(int threads)
+    {
+        this.threads = Math.max(1, threads);
+        this.workers = new Worker[this.threads];
+        this.work = new AtomicLong();
+        this.incumbent = new AtomicReference<>();
+    }
+
+    /**
+     * @return The cheapest goal state, or null if no goal can be reached.
+     */
+    public GameState search(GameState start)
+    {
+        done = false;
+        work.set(0);
+        incumbent.set(null);
+        for (int i = 0; i < threads; i++)
+            workers[i] = new Worker();
+        send(start);
+        Thread[] running = new Thread[threads];
+        for (int i = 0; i < threads; i++)
+        {
+            running[i] = new Thread(workers[i], "hda-" + i);
+            running[i].start();
+        }
+        for (Thread thread : running)
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                done = true;
+                Thread.currentThread().interrupt();
+            }
+        }
+        return incumbent.get();
+    }
+
+    private void send(GameState state)
+    {
+        work.incrementAndGet();
+        workers[owner(state)].inbox.offer(state);
+    }
+
+    private int owner(GameState state)
+    {
+        long hash = state.getZobristHash();
+        hash ^= hash >>> 29;
+        hash *= 0xBF58476D1CE4E5B9L;
+        hash ^= hash >>> 32;
+        return (int) Math.floorMod(hash, (long) threads);
+    }
+
+    private double bound()
+    {
+        GameState goal = incumbent.get();
+        return goal == null ? Double.POSITIVE_INFINITY : goal.getCost();
+    }
+
+    private void offerGoal(GameState goal)
+    {
+        GameState best = incumbent.get();
+        while ((best == null || goal.getCost() < best.getCost())
+                && !incumbent.compareAndSet(best, goal))
+            best = incumbent.get();
+    }
+
+    /**
+     * @return Number of states expanded by each worker in the last search.
+     */
+    public int[] getExpanded()
+    {
+        int[] expanded = new int[threads];
+        for (int i = 0; i < threads; i++)
+            expanded[i] = workers[i] == null ? 0 : workers[i].expanded;
+        return expanded;
+    }
+
+    private class Worker implements Runnable
+    {
+        private final MpscQueue<GameState> inbox = new MpscQueue<>();
+        private final IndexedHeap<GameState> open = new IndexedHeap<>();
+        private final Map<GameState, GameState> closed = new HashMap<>();
+        private int expanded;
+
+        @Override
+        public void run()
+        {
+            boolean active = false;
+            while (!done)
+            {
+                if (!active && inbox.isEmpty())
+                {
+                    Thread.yield();
+                    continue;
+                }
+                if (!active)
+                {
+                    work.incrementAndGet();
+                    active = true;
+                }
+                GameState received;
+                while ((received = inbox.poll()) != null)
+                {
+                    receive(received);
+                    work.decrementAndGet();
+                }
+                GameState next = open.peek();
+                if (next != null && next.getEstimate() < bound())
+                {
+                    expand(open.poll());
+                }
+                else
+                {
+                    active = false;
+                    if (work.decrementAndGet() == 0)
+                        done = true;
+                }
+            }
+        }
+
+        private void receive(GameState state)
+        {
+            if (state.isGoal())
+            {
+                offerGoal(state);
+                return;
+            }
+            GameState previous = closed.get(state);
+            if (previous != null)
+            {
+                if (state.getCost() >= previous.getCost())
+                    return;
+                closed.remove(state);
+            }
+            if (!open.offer(state))
+                open.get(state).wake(state);
+        }
+
+        private void expand(GameState parent)
+        {
+            closed.put(parent, parent);
+            expanded++;
+            Iterator<GameState> children = parent.successors();
+            while (children.hasNext())
+            {
+                GameState child = children.next();
+                if (child.getEstimate() < bound())
+                    send(child);
+            }
+        }
+    }
+
+    /*
+     * Unbounded multi-producer single-consumer queue (Vyukov). A producer
+     * swaps itself in as the tail and then links the old tail to it; the
+     * consumer follows the links from a sentinel head. Neither side locks.
+     * An element whose link is not yet written is invisible for a moment,
+     * which the work counter covers.
+     */
+    private static class MpscQueue<T>
+    {
+        private final AtomicReference<Node<T>> tail;
+        private Node<T> head;
+
+        private MpscQueue()
+        {
+            Node<T> sentinel = new Node<>(null);
+            this.head = sentinel;
+            this.tail = new AtomicReference<>(sentinel);
+        }
+
+        private void offer(T value)
+        {
+            Node<T> node = new Node<>(value);
+            tail.getAndSet(node).next = node;
+        }
+
+        private T poll()
+        {
+            Node<T> next = head.next;
+            if (next == null)
+                return null;
+            T value = next.value;
+            next.value = null;
+            head = next;
+            return value;
+        }
+
+        private boolean isEmpty()
+        {
+            return head.next == null;
+        }
+
+        private static class Node<T>
+        {
+            private T value;
+            private volatile Node<T> next;
+
+            private Node(T value)
+            {
+                this.value = value;
+            }
+        }
+    }
+}
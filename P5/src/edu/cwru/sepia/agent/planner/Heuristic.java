@@ -0,0 +1,31 @@
+package edu.cwru.sepia.agent.planner;
+
+import edu.cwru.sepia.agent.planner.actions.StripsAction;
+
+/**
+ * Estimates the remaining cost from a state to a goal. A heuristic is built
+ * once per {@link GameState.Problem} and shared by every state of the
+ * search, so it may precompute anything that only depends on the problem.
+ */
+public interface Heuristic
+{
+    /**
+     * @param state State that is not a goal.
+     * @return Estimated cost from the state to the nearest goal, in the units
+     * of {@link GameState#getCost()}.
+     */
+    double estimate(GameState state);
+
+    /**
+     * Helpful actions are the ones a heuristic search prefers, in FF the
+     * actions that start the relaxed plan. By default every action is.
+     *
+     * @param state  State the action is taken in.
+     * @param action Action of one unit.
+     * @return True if the action helps towards the goal.
+     */
+    default boolean isHelpful(GameState state, StripsAction action)
+    {
+        return true;
+    }
+}
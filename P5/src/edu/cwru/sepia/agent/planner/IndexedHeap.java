@@ -0,0 +1,144 @@
+package edu.cwru.sepia.agent.planner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary min-heap for the open set of a search. Every element is indexed by
+ * its position in the heap, so membership is a hash lookup and an element
+ * that is found again with a smaller key is updated in place instead of
+ * being added a second time.
+ * <p>
+ * Elements that are equal must be the same search node. The ordering of the
+ * elements must not change while they are in the heap, except through
+ * {@link #offer(Comparable)}.
+ *
+ * @param <T> Type of the elements.
+ */
+public class IndexedHeap<T extends Comparable<T>>
+{
+    private final List<T> heap;
+    private final Map<T, Integer> indices;
+
+    public IndexedHeap()
+    {
+        this.heap = new ArrayList<>();
+        this.indices = new HashMap<>();
+    }
+
+    /**
+     * Adds an element, or replaces an equal element already in the heap if
+     * the new one is smaller (decrease-key).
+     *
+     * @return True if the element was added or replaced an equal one.
+     */
+    public boolean offer(T element)
+    {
+        Integer index = indices.get(element);
+        if (index == null)
+        {
+            heap.add(element);
+            indices.put(element, heap.size() - 1);
+            siftUp(heap.size() - 1);
+            return true;
+        }
+        if (element.compareTo(heap.get(index)) >= 0)
+            return false;
+        heap.set(index, element);
+        indices.put(element, index);
+        siftUp(index);
+        return true;
+    }
+
+    /**
+     * @return The smallest element, which is removed, or null if the heap is
+     * empty.
+     */
+    public T poll()
+    {
+        if (heap.isEmpty())
+            return null;
+        T first = heap.get(0);
+        T last = heap.remove(heap.size() - 1);
+        indices.remove(first);
+        if (!heap.isEmpty())
+        {
+            heap.set(0, last);
+            indices.put(last, 0);
+            siftDown(0);
+        }
+        return first;
+    }
+
+    public T peek()
+    {
+        return heap.isEmpty() ? null : heap.get(0);
+    }
+
+    public boolean contains(T element)
+    {
+        return indices.containsKey(element);
+    }
+
+    /**
+     * @return The element in the heap equal to the given one, or null.
+     */
+    public T get(T element)
+    {
+        Integer index = indices.get(element);
+        return index == null ? null : heap.get(index);
+    }
+
+    public boolean isEmpty()
+    {
+        return heap.isEmpty();
+    }
+
+    public int size()
+    {
+        return heap.size();
+    }
+
+    private void siftUp(int index)
+    {
+        T element = heap.get(index);
+        while (index > 0)
+        {
+            int parent = (index - 1) / 2;
+            if (heap.get(parent).compareTo(element) <= 0)
+                break;
+            move(parent, index);
+            index = parent;
+        }
+        heap.set(index, element);
+        indices.put(element, index);
+    }
+
+    private void siftDown(int index)
+    {
+        T element = heap.get(index);
+        int size = heap.size();
+        while (2 * index + 1 < size)
+        {
+            int child = 2 * index + 1;
+            if (child + 1 < size
+                    && heap.get(child + 1).compareTo(heap.get(child)) < 0)
+                child++;
+            if (element.compareTo(heap.get(child)) <= 0)
+                break;
+            move(child, index);
+            index = child;
+        }
+        heap.set(index, element);
+        indices.put(element, index);
+    }
+
+    private void move(int from, int to)
+    {
+        T element = heap.get(from);
+        heap.set(to, element);
+        indices.put(element, to);
+    }
+}
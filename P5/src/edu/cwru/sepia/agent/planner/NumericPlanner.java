@@ -0,0 +1,265 @@
+package edu.cwru.sepia.agent.planner;
+
+import edu.cwru.sepia.agent.planner.GameState.Problem;
+import edu.cwru.sepia.agent.planner.GameState.Resource;
+import edu.cwru.sepia.agent.planner.GameState.Unit;
+import edu.cwru.sepia.agent.planner.actions.*;
+import edu.cwru.sepia.environment.model.state.ResourceType;
+
+import java.util.*;
+
+import static edu.cwru.sepia.environment.model.state.ResourceType.GOLD;
+import static edu.cwru.sepia.environment.model.state.ResourceType.WOOD;
+
+/**
+ * Plans with the amounts of gold and wood, what every resource holds and
+ * the number of peasants as numbers, instead of searching over states that
+ * differ by one load. A plan is a sequence of rounds. In every round each
+ * peasant makes one {@link Trip} or idles, and the town hall may produce a
+ * peasant, who works from the next round on.
+ * <p>
+ * Only two things are decided:
+ * <ul>
+ * <li>Which resources are used. Trips of a type go to the cheapest
+ * resource that still holds something.</li>
+ * <li>When peasants are produced. For every number k of peasants to
+ * produce, each is produced as soon as there is gold for it, and gold
+ * trips come first until then.</li>
+ * </ul>
+ * Once the last peasant is produced, the rounds that are left follow from
+ * the number of trips that are left, counted per resource, divided among
+ * the peasants. So evaluating a k takes time in the number of rounds until
+ * the last production, not in the size of the goal. The k with the fewest
+ * rounds wins. Only writing out the plan takes one step per round.
+ */
+public class NumericPlanner
+{
+    private static final ResourceType[] TYPES = {GOLD, WOOD};
+
+    private final Problem problem;
+    private final int[][] order;
+    private final int goldCost;
+    private final int woodCost;
+    private int lastProduced;
+
+    public NumericPlanner(Problem problem)
+    {
+        this.problem = problem;
+        Unit townHall = problem.getUnit(0);
+        this.goldCost = townHall.getGoldCostToProduce();
+        this.woodCost = townHall.getWoodCostToProduce();
+        this.order = new int[TYPES.length][];
+        for (int t = 0; t < TYPES.length; t++)
+        {
+            ResourceType type = TYPES[t];
+            order[t] = problem.getResources()
+                              .stream()
+                              .filter(r -> r.getType() == type)
+                              .sorted(Comparator.comparingDouble(
+                                      Resource::getDistanceToTownHall))
+                              .mapToInt(Resource::getSlot)
+                              .toArray();
+        }
+    }
+
+    /**
+     * @return The plan, first step on top, or null if the goal cannot be
+     * reached.
+     */
+    public Stack<StripsAction> plan()
+    {
+        int peasants = problem.getUnits().size() - 1;
+        int maxProduced = problem.considerBuildingPeasants()
+                          ? Math.max(0, trips(new Rounds()) - peasants)
+                          : 0;
+        int bestRounds = Integer.MAX_VALUE;
+        int bestProduced = 0;
+        // Producing k peasants takes at least k rounds
+        for (int k = 0; k <= maxProduced && k < bestRounds; k++)
+        {
+            int rounds = rounds(k, bestRounds);
+            if (rounds < bestRounds)
+            {
+                bestRounds = rounds;
+                bestProduced = k;
+            }
+        }
+        if (bestRounds == Integer.MAX_VALUE)
+            return null;
+        lastProduced = bestProduced;
+        Rounds rounds = new Rounds();
+        List<StripsActionSet> steps = new ArrayList<>();
+        while (steps.size() < bestRounds && !rounds.isGoal())
+            steps.add(rounds.next(bestProduced, true));
+        Stack<StripsAction> plan = new Stack<>();
+        for (int i = steps.size() - 1; i >= 0; i--)
+            plan.push(steps.get(i));
+        return plan;
+    }
+
+    /**
+     * @return Number of peasants the last plan produces.
+     */
+    public int getProduced()
+    {
+        return lastProduced;
+    }
+
+    /*
+     * Rounds to the goal when k peasants are produced, or MAX_VALUE if the
+     * goal cannot be reached or it takes at least the bound.
+     */
+    private int rounds(int k, int bound)
+    {
+        Rounds rounds = new Rounds();
+        int count = 0;
+        while (rounds.produced < k && !rounds.isGoal())
+        {
+            if (count >= bound || !rounds.canProduceLater(k))
+                return Integer.MAX_VALUE;
+            rounds.next(k, false);
+            count++;
+        }
+        int trips = trips(rounds);
+        if (trips < 0)
+            return Integer.MAX_VALUE;
+        long total = count + (trips + (long) rounds.peasants - 1)
+                / Math.max(1, rounds.peasants);
+        return rounds.peasants == 0 && trips > 0 || total >= bound
+               ? Integer.MAX_VALUE
+               : (int) total;
+    }
+
+    /*
+     * Trips still needed for the goal, taking each type from its cheapest
+     * resources, or -1 if the resources do not hold enough.
+     */
+    private int trips(Rounds rounds)
+    {
+        int trips = 0;
+        for (int t = 0; t < TYPES.length; t++)
+        {
+            int need = problem.getRequired(TYPES[t]) - rounds.amount[t];
+            for (int r : order[t])
+            {
+                if (need <= 0)
+                    break;
+                int taken = Math.min(need, rounds.remaining[r]);
+                trips += loads(taken);
+                need -= taken;
+            }
+            if (need > 0)
+                return -1;
+        }
+        return trips;
+    }
+
+    private static int loads(int amount)
+    {
+        return amount <= 0 ? 0 : (amount + Gather.AMOUNT - 1) / Gather.AMOUNT;
+    }
+
+    /*
+     * The numeric state between two rounds.
+     */
+    private class Rounds
+    {
+        private final int[] amount = new int[TYPES.length];
+        private final int[] remaining;
+        private int peasants;
+        private int produced;
+
+        private Rounds()
+        {
+            for (int t = 0; t < TYPES.length; t++)
+                amount[t] = problem.getCurrentAmounts()
+                                   .getOrDefault(TYPES[t], 0);
+            remaining = new int[problem.getResources().size()];
+            for (Resource resource : problem.getResources())
+                remaining[resource.getSlot()] =
+                        problem.getInitialRemaining(resource);
+            peasants = problem.getUnits().size() - 1;
+        }
+
+        private boolean isGoal()
+        {
+            return amount[0] >= problem.getRequired(GOLD)
+                    && amount[1] >= problem.getRequired(WOOD);
+        }
+
+        // The gold and wood for the peasants still to produce can be found
+        private boolean canProduceLater(int k)
+        {
+            long gold = amount[0] + Arrays.stream(order[0])
+                                          .mapToLong(r -> remaining[r])
+                                          .sum();
+            long wood = amount[1] + Arrays.stream(order[1])
+                                          .mapToLong(r -> remaining[r])
+                                          .sum();
+            return peasants > 0
+                    && gold >= (long) goldCost * (k - produced)
+                    && wood >= (long) woodCost * (k - produced);
+        }
+
+        /*
+         * Plays one round towards producing k peasants. Builds the joint
+         * action of the round if asked to.
+         */
+        private StripsActionSet next(int k, boolean build)
+        {
+            StripsActionSet step = build ? new StripsActionSet() : null;
+            Unit townHall = problem.getUnit(0);
+            int[] need = new int[TYPES.length];
+            need[0] = problem.getRequired(GOLD)
+                    + goldCost * (k - produced) - amount[0];
+            need[1] = problem.getRequired(WOOD)
+                    + woodCost * (k - produced) - amount[1];
+            boolean produce = produced < k
+                    && amount[0] >= goldCost
+                    && amount[1] >= woodCost;
+            if (produce)
+            {
+                amount[0] -= goldCost;
+                amount[1] -= woodCost;
+                produced++;
+            }
+            if (build)
+                step.getActions().add(
+                        produce ? new Produce(townHall, goldCost, woodCost)
+                                : new Idle(townHall));
+            // Trips are handed out per resource, so a round takes time in
+            // the number of resources unless its actions are built
+            int first = produced < k || need[0] >= need[1] ? 0 : 1;
+            int free = peasants;
+            int[] deposited = new int[TYPES.length];
+            int slot = 1;
+            for (int i = 0; i < TYPES.length; i++)
+            {
+                int t = (first + i) % TYPES.length;
+                for (int r : order[t])
+                {
+                    if (free == 0 || need[t] <= 0)
+                        break;
+                    int trips = Math.min(free, Math.min(loads(need[t]),
+                                                        loads(remaining[r])));
+                    int taken = Math.min(trips * Gather.AMOUNT, remaining[r]);
+                    remaining[r] -= taken;
+                    need[t] -= taken;
+                    deposited[t] += taken;
+                    free -= trips;
+                    for (int n = 0; build && n < trips; n++, slot++)
+                        step.getActions().add(
+                                new Trip(problem.getUnit(slot),
+                                         problem.getResource(r)));
+                }
+            }
+            for (; build && slot <= peasants; slot++)
+                step.getActions().add(new Idle(problem.getUnit(slot)));
+            for (int t = 0; t < TYPES.length; t++)
+                amount[t] += deposited[t];
+            if (produce)
+                peasants++;
+            return step;
+        }
+    }
+}
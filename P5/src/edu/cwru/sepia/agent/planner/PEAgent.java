@@ -12,9 +12,7 @@ import edu.cwru.sepia.environment.model.state.Unit.UnitView;
 
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Stack;
+import java.util.*;
 
 import static edu.cwru.sepia.action.ActionType.*;
 
@@ -26,11 +24,21 @@ public class PEAgent extends Agent
 {
     // The plan being executed
     private Stack<StripsAction> plan;
-    // maps the real unit Ids to the plan's unit ids
+    // maps the plan's unit ids to the real unit Ids
     // when you're planning you won't know the true unit IDs that sepia
     // assigns. So you'll use placeholders (1, 2, 3).
-    // this maps those placeholders to the actual unit IDs.
+    // this maps those placeholders to the actual unit IDs. The plan ids are
+    // the GameState unit slots: 0 is the town hall, the initial peasants
+    // follow in order of their SEPIA ids and produced peasants take the
+    // slots that are still free when they appear. The planner reorders
+    // interchangeable peasants after each step, so the map is reordered
+    // with it.
     private Map<Integer, Integer> peasantIdMap;
+    // The timed plan being executed instead, if any, with the action each
+    // unit is running and the peasants that are on the deposit of a trip
+    private Schedule schedule;
+    private Map<Integer, Schedule.Entry> running;
+    private Set<Integer> depositing;
     private int townhallId;
     private int peasantTemplateId;
 
@@ -41,6 +49,19 @@ public class PEAgent extends Agent
         this.plan = plan;
     }
 
+    /**
+     * Executes a schedule, in which units start and finish their actions on
+     * their own. Peasants keep their slots, since the schedule does not
+     * reorder them.
+     */
+    public PEAgent(int playernum, Schedule schedule)
+    {
+        this(playernum, new Stack<>());
+        this.schedule = schedule;
+        this.running = new HashMap<>();
+        this.depositing = new HashSet<>();
+    }
+
     @Override
     public Map<Integer, Action> initialStep(StateView stateView,
                                             HistoryView historyView)
@@ -52,9 +73,9 @@ public class PEAgent extends Agent
             String unitType = unit.getTemplateView().getName().toLowerCase();
             if (unitType.equals("townhall"))
                 townhallId = unitId;
-            else if (unitType.equals("peasant"))
-                peasantIdMap.put(unitId, unitId);
         }
+        peasantIdMap.put(0, townhallId);
+        mapNewPeasants(stateView);
         // Gets the peasant template ID. This is used when building a new
         // peasant with the townhall
         for (TemplateView templateView : stateView.getTemplates(playernum))
@@ -101,31 +122,141 @@ public class PEAgent extends Agent
                                            HistoryView historyView)
     {
         Map<Integer, Action> actionMap = new HashMap<>();
+        mapNewPeasants(stateView);
         int lastTurnNum = stateView.getTurnNumber() - 1;
         Map<Integer, ActionResult> lastTurn =
                 historyView.getCommandFeedback(playernum, lastTurnNum);
-        if (!readyForNextStep(lastTurn))
+        if (schedule != null)
+            return executeSchedule(lastTurn);
+        if (plan.isEmpty() || !readyForNextStep(lastTurn))
             return actionMap;
         StripsActionSet actionSet = (StripsActionSet) plan.pop();
+        StripsActionSet deposits = depositsOfTrips(actionSet);
         for (StripsAction action : actionSet.getActions())
             actionMap.putAll(createSepiaAction(action));
+        if (deposits == null)
+            reorderPeasants(actionSet.getSlotOrder());
+        else
+            plan.push(deposits);
+        return actionMap;
+    }
+
+    /*
+     * Ends the actions that are done, going on from the gather of a trip to
+     * its deposit, then starts the next action of every free unit that the
+     * schedule lets start.
+     */
+    private Map<Integer, Action> executeSchedule(
+            Map<Integer, ActionResult> lastTurn)
+    {
+        Map<Integer, Action> actionMap = new HashMap<>();
+        Iterator<Map.Entry<Integer, Schedule.Entry>> it =
+                running.entrySet().iterator();
+        while (it.hasNext())
+        {
+            Map.Entry<Integer, Schedule.Entry> unit = it.next();
+            int slot = unit.getKey();
+            if (!isDone(getSepiaUnitId(slot), lastTurn))
+                continue;
+            StripsAction action = unit.getValue().getAction();
+            if (action instanceof Trip && depositing.add(slot))
+            {
+                actionMap.putAll(
+                        createSepiaAction(((Trip) action).getDeposit()));
+                continue;
+            }
+            depositing.remove(slot);
+            schedule.finish(unit.getValue());
+            it.remove();
+        }
+        for (int slot : schedule.getWaitingUnits())
+        {
+            if (running.containsKey(slot) || !peasantIdMap.containsKey(slot))
+                continue;
+            Schedule.Entry entry = schedule.start(slot);
+            if (entry == null)
+                continue;
+            running.put(slot, entry);
+            actionMap.putAll(createSepiaAction(entry.getAction()));
+        }
         return actionMap;
     }
 
+    // A step with trips gathers first. The deposits that end the trips are
+    // the next step, after which the peasants are reordered.
+    private StripsActionSet depositsOfTrips(StripsActionSet actionSet)
+    {
+        StripsActionSet deposits = new StripsActionSet();
+        for (StripsAction action : actionSet.getActions())
+            if (action instanceof Trip)
+                deposits.getActions().add(((Trip) action).getDeposit());
+        if (deposits.getActions().isEmpty())
+            return null;
+        deposits.setSlotOrder(actionSet.getSlotOrder());
+        return deposits;
+    }
+
     private int getSepiaUnitId(int gameStateUnitId)
     {
         return peasantIdMap.get(gameStateUnitId);
     }
 
+    // Gives the free plan ids to peasants that are not mapped yet
+    private void mapNewPeasants(StateView stateView)
+    {
+        List<Integer> unitIds = new ArrayList<>(stateView.getUnitIds(playernum));
+        Collections.sort(unitIds);
+        for (int unitId : unitIds)
+        {
+            UnitView unit = stateView.getUnit(unitId);
+            String unitType = unit.getTemplateView().getName().toLowerCase();
+            if (unitType.equals("peasant")
+                    && !peasantIdMap.containsValue(unitId))
+                peasantIdMap.put(freeSlot(), unitId);
+        }
+    }
+
+    private int freeSlot()
+    {
+        int slot = 0;
+        while (peasantIdMap.containsKey(slot))
+            slot++;
+        return slot;
+    }
+
+    // Follows the peasants to the slots they have in the next plan step. A
+    // peasant that is still being produced leaves its slot free.
+    private void reorderPeasants(int[] slotOrder)
+    {
+        if (slotOrder == null)
+            return;
+        Map<Integer, Integer> reordered = new HashMap<>();
+        for (int slot = 0; slot < slotOrder.length; slot++)
+        {
+            Integer unitId = peasantIdMap.get(slotOrder[slot]);
+            if (unitId != null)
+                reordered.put(slot, unitId);
+        }
+        peasantIdMap = reordered;
+    }
+
+    // Units without feedback did nothing last turn
     private boolean readyForNextStep(Map<Integer, ActionResult> lastTurn)
     {
-        for (int peasant : peasantIdMap.keySet())
-            if (lastTurn.get(peasantIdMap.get(peasant))
-                        .getFeedback() != ActionFeedback.COMPLETED)
+        for (int unit : peasantIdMap.values())
+            if (!isDone(unit, lastTurn))
                 return false;
         return true;
     }
 
+    private boolean isDone(int unit, Map<Integer, ActionResult> lastTurn)
+    {
+        return lastTurn == null
+                || !lastTurn.containsKey(unit)
+                || lastTurn.get(unit).getFeedback()
+                != ActionFeedback.INCOMPLETE;
+    }
+
     /**
      * Returns a SEPIA version of the specified Strips Action.
      * <p>
@@ -160,20 +291,20 @@ public class PEAgent extends Agent
         Action sepiaAction = null;
         Integer sepiaUnit = null;
         Map<Integer, Action> actionMap = new HashMap<>();
-        if (action.getSepiaActionType().equals(COMPOUNDDEPOSIT))
+        if (action.getSepiaActionType() == COMPOUNDDEPOSIT)
         {
             Deposit deposit = (Deposit) action;
             sepiaUnit = getSepiaUnitId(deposit.getDepositor().getId());
             sepiaAction = action.getSepiaAction(sepiaUnit, townhallId);
         }
-        if (action.getSepiaActionType().equals(COMPOUNDGATHER))
+        if (action.getSepiaActionType() == COMPOUNDGATHER)
         {
             Gather gather = (Gather) action;
             int resource = gather.getGatherFrom().getId();
             sepiaUnit = getSepiaUnitId(gather.getGatherer().getId());
             sepiaAction = action.getSepiaAction(sepiaUnit, resource);
         }
-        if (action.getSepiaActionType().equals(COMPOUNDPRODUCE))
+        if (action.getSepiaActionType() == COMPOUNDPRODUCE)
         {
             Produce produce = (Produce) action;
             sepiaUnit = getSepiaUnitId(produce.getProducer().getId());
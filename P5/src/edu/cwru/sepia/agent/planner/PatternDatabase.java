@@ -0,0 +1,275 @@
+package edu.cwru.sepia.agent.planner;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Exact costs of an abstraction of the planning problem to one resource
+ * type. An abstract state is (loads, carriers, peasants): the loads of the
+ * type still to be deposited, the peasants carrying one, and all peasants.
+ * Peasants carrying the other type count as free, loads count as full, every
+ * trip uses the cheapest resource of the type and resources never run out.
+ * <p>
+ * In an abstract step the carriers may deposit, the free peasants may
+ * gather and the town hall may produce a peasant, who is free the step
+ * after. A step costs as much as its most expensive action; idling is free.
+ * Delivering or gathering with more peasants never hurts, so a step either
+ * has all carriers deposit or none, and either has all free peasants gather
+ * or none.
+ * <p>
+ * The costs to the goal (no loads left) are computed once by a backward
+ * Dijkstra search and stored in a flat array. The real step of the
+ * planner lasts at least as long as its slowest action, and any of its
+ * actions on this type maps to an abstract step. A step of trips lasts its
+ * slowest gather plus its slowest deposit, at least the two abstract steps
+ * it maps to. So a table entry never exceeds the real duration.
+ * <p>
+ * The table and its parameters are serializable, so a scenario that is
+ * planned again can load it instead of building it.
+ */
+public class PatternDatabase implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    private static final double UNREACHABLE = Double.POSITIVE_INFINITY;
+
+    private final int maxLoads;
+    private final int maxPeasants;
+    private final boolean produce;
+    private final double gatherCost;
+    private final double depositCost;
+    private final double produceCost;
+    private final double[] costs;
+
+    /**
+     * Builds the table.
+     *
+     * @param maxLoads    Most loads that can be missing.
+     * @param maxPeasants Most peasants worth telling apart.
+     * @param produce     True if peasants may be produced.
+     * @param gatherCost  Cost of the cheapest gather of the type.
+     * @param depositCost Cost of the cheapest deposit of the type.
+     * @param produceCost Cost of producing a peasant.
+     */
+    public PatternDatabase(int maxLoads,
+                           int maxPeasants,
+                           boolean produce,
+                           double gatherCost,
+                           double depositCost,
+                           double produceCost)
+    {
+        this.maxLoads = maxLoads;
+        this.maxPeasants = maxPeasants;
+        this.produce = produce;
+        this.gatherCost = gatherCost;
+        this.depositCost = depositCost;
+        this.produceCost = produceCost;
+        this.costs = new double[(maxLoads + 1) * (maxPeasants + 1)
+                                        * (maxPeasants + 1)];
+        search();
+    }
+
+    /**
+     * @param loads     Loads still to be deposited.
+     * @param carriers  Peasants carrying a load of the type.
+     * @param peasants  All peasants.
+     * @return Exact abstract cost to deposit the loads.
+     */
+    public double lookup(int loads, int carriers, int peasants)
+    {
+        if (loads <= 0)
+            return 0;
+        int p = Math.min(peasants, maxPeasants);
+        int c = Math.min(carriers, p);
+        return costs[index(Math.min(loads, maxLoads), p, c)];
+    }
+
+    /**
+     * @return True if this table was built with the given parameters, so it
+     * can stand in for building a new one.
+     */
+    public boolean matches(int maxLoads,
+                           int maxPeasants,
+                           boolean produce,
+                           double gatherCost,
+                           double depositCost,
+                           double produceCost)
+    {
+        return this.maxLoads == maxLoads
+                && this.maxPeasants == maxPeasants
+                && this.produce == produce
+                && Double.compare(this.gatherCost, gatherCost) == 0
+                && Double.compare(this.depositCost, depositCost) == 0
+                && Double.compare(this.produceCost, produceCost) == 0;
+    }
+
+    private int index(int loads, int peasants, int carriers)
+    {
+        return (loads * (maxPeasants + 1) + peasants) * (maxPeasants + 1)
+                + carriers;
+    }
+
+    /*
+     * Dijkstra from every goal state over the reversed abstract steps. A step
+     * from (L, P, c) with deposit D, gather G and produce B leads to
+     *   L' = max(0, L - D * c)
+     *   c' = (1 - D) * c + G * (P - c)
+     *   P' = P + B
+     * and costs the largest of the costs of the parts it uses.
+     */
+    private void search()
+    {
+        Arrays.fill(costs, UNREACHABLE);
+        PriorityQueue<Integer> open = new PriorityQueue<>(
+                (a, b) -> Double.compare(costs[a], costs[b]));
+        boolean[] closed = new boolean[costs.length];
+        for (int p = 0; p <= maxPeasants; p++)
+        {
+            for (int c = 0; c <= p; c++)
+            {
+                costs[index(0, p, c)] = 0;
+                open.add(index(0, p, c));
+            }
+        }
+        int[] loads = new int[maxLoads + 1];
+        while (!open.isEmpty())
+        {
+            int current = open.poll();
+            if (closed[current])
+                continue;
+            closed[current] = true;
+            int c2 = current % (maxPeasants + 1);
+            int p2 = current / (maxPeasants + 1) % (maxPeasants + 1);
+            int l2 = current / ((maxPeasants + 1) * (maxPeasants + 1));
+            for (int b = 0; b <= (produce ? 1 : 0); b++)
+            {
+                int p = p2 - b;
+                if (p < 0)
+                    continue;
+                // D = 0, G = 0: only the town hall acts
+                if (b == 1 && c2 <= p)
+                    relax(open, l2, p, c2, current, cost(false, false, b));
+                // D = 0, G = 1: every free peasant becomes a carrier
+                if (c2 == p)
+                    for (int c = 0; c < p; c++)
+                        relax(open, l2, p, c, current, cost(false, true, b));
+                // D = 1, G = 0: every carrier becomes free
+                if (c2 == 0)
+                {
+                    for (int c = 1; c <= p; c++)
+                    {
+                        int n = before(l2, c, loads);
+                        for (int i = 0; i < n; i++)
+                            relax(open, loads[i], p, c, current,
+                                  cost(true, false, b));
+                    }
+                }
+                // D = 1, G = 1: carriers and free peasants swap
+                int c = p - c2;
+                if (c2 >= 1 && c >= 1)
+                {
+                    int n = before(l2, c, loads);
+                    for (int i = 0; i < n; i++)
+                        relax(open, loads[i], p, c, current,
+                              cost(true, true, b));
+                }
+            }
+        }
+    }
+
+    // Loads before depositing c of them that leave l2, into loads
+    private int before(int l2, int c, int[] loads)
+    {
+        if (l2 > 0)
+        {
+            if (l2 + c > maxLoads)
+                return 0;
+            loads[0] = l2 + c;
+            return 1;
+        }
+        int n = 0;
+        for (int l = 1; l <= Math.min(c, maxLoads); l++)
+            loads[n++] = l;
+        return n;
+    }
+
+    private void relax(PriorityQueue<Integer> open,
+                       int loads,
+                       int peasants,
+                       int carriers,
+                       int next,
+                       double stepCost)
+    {
+        int previous = index(loads, peasants, carriers);
+        double cost = costs[next] + stepCost;
+        if (cost < costs[previous])
+        {
+            costs[previous] = cost;
+            open.add(previous);
+        }
+    }
+
+    private double cost(boolean deposit, boolean gather, int produced)
+    {
+        double cost = 0;
+        if (deposit)
+            cost = Math.max(cost, depositCost);
+        if (gather)
+            cost = Math.max(cost, gatherCost);
+        if (produced == 1)
+            cost = Math.max(cost, produceCost);
+        return cost;
+    }
+
+    /**
+     * @return The table stored in the file, or null if it cannot be read.
+     */
+    public static PatternDatabase load(File file)
+    {
+        if (!file.isFile())
+            return null;
+        try (ObjectInputStream in =
+                     new ObjectInputStream(new FileInputStream(file)))
+        {
+            return (PatternDatabase) in.readObject();
+        }
+        catch (IOException | ClassNotFoundException | ClassCastException e)
+        {
+            System.err.println("Ignoring unreadable pattern database "
+                                       + file + ": " + e);
+            return null;
+        }
+    }
+
+    public void save(File file)
+    {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null)
+            directory.mkdirs();
+        try (ObjectOutputStream out =
+                     new ObjectOutputStream(new FileOutputStream(file)))
+        {
+            out.writeObject(this);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Could not save pattern database " + file
+                                       + ": " + e);
+        }
+    }
+
+    public int getMaxLoads()
+    {
+        return maxLoads;
+    }
+
+    public int getMaxPeasants()
+    {
+        return maxPeasants;
+    }
+
+    public int size()
+    {
+        return costs.length;
+    }
+}
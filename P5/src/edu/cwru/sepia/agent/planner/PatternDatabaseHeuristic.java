@@ -0,0 +1,152 @@
+package edu.cwru.sepia.agent.planner;
+
+import edu.cwru.sepia.agent.planner.GameState.Problem;
+import edu.cwru.sepia.agent.planner.GameState.Resource;
+import edu.cwru.sepia.agent.planner.actions.Gather;
+import edu.cwru.sepia.environment.model.state.ResourceType;
+
+import java.io.File;
+
+import static edu.cwru.sepia.environment.model.state.ResourceType.GOLD;
+import static edu.cwru.sepia.environment.model.state.ResourceType.WOOD;
+
+/**
+ * Heuristic looked up in one {@link PatternDatabase} per resource type.
+ * <ul>
+ * <li>{@link Mode#MAX}: the largest of the costs. Admissible, since every
+ * table is.</li>
+ * <li>{@link Mode#ADD}: the sum of the costs. Better informed, but not
+ * admissible, since a step that gathers both types lasts as long as its
+ * slowest action and counts in both tables.</li>
+ * </ul>
+ * The tables are built when the problem is created. If a cache directory is
+ * given they are saved there and loaded instead on the next run with the
+ * same parameters.
+ */
+public class PatternDatabaseHeuristic implements Heuristic
+{
+    private static final ResourceType[] TYPES = {GOLD, WOOD};
+
+    /**
+     * How the costs of the tables are combined.
+     */
+    public enum Mode
+    {
+        MAX, ADD
+    }
+
+    private final Problem problem;
+    private final Mode mode;
+    private final PatternDatabase[] databases;
+    private final int[] typeOf;
+
+    /**
+     * @param cache Directory of saved tables, or null to always build them.
+     */
+    public PatternDatabaseHeuristic(Problem problem, Mode mode, File cache)
+    {
+        this.problem = problem;
+        this.mode = mode;
+        this.databases = new PatternDatabase[TYPES.length];
+        this.typeOf = new int[problem.getResources().size()];
+        for (Resource resource : problem.getResources())
+            typeOf[resource.getSlot()] = resource.getType() == GOLD ? 0 : 1;
+        for (int t = 0; t < TYPES.length; t++)
+            databases[t] = database(TYPES[t], cache);
+    }
+
+    private PatternDatabase database(ResourceType type, File cache)
+    {
+        double gatherCost = Double.POSITIVE_INFINITY;
+        double depositCost = Double.POSITIVE_INFINITY;
+        for (Resource resource : problem.getResources())
+        {
+            if (resource.getType() != type)
+                continue;
+            int slot = resource.getSlot();
+            gatherCost = Math.min(gatherCost, problem.getGatherDuration(slot));
+            depositCost = Math.min(depositCost,
+                                   problem.getDepositDuration(slot));
+        }
+        double produceCost = problem.getProduceDuration();
+        int maxLoads = loads(problem.getRequired(type));
+        int peasants = problem.getUnits().size() - 1;
+        boolean produce = problem.considerBuildingPeasants();
+        // More peasants than loads cannot make a plan cheaper
+        int maxPeasants = produce ? Math.max(peasants, maxLoads) : peasants;
+
+        File file = cache == null ? null : new File(
+                cache,
+                String.format("pdb-%s-%d-%d-%b-%s-%s-%s.ser",
+                              type.name().toLowerCase(),
+                              maxLoads,
+                              maxPeasants,
+                              produce,
+                              gatherCost,
+                              depositCost,
+                              produceCost));
+        if (file != null)
+        {
+            PatternDatabase saved = PatternDatabase.load(file);
+            if (saved != null && saved.matches(maxLoads,
+                                               maxPeasants,
+                                               produce,
+                                               gatherCost,
+                                               depositCost,
+                                               produceCost))
+                return saved;
+        }
+        PatternDatabase database = new PatternDatabase(maxLoads,
+                                                       maxPeasants,
+                                                       produce,
+                                                       gatherCost,
+                                                       depositCost,
+                                                       produceCost);
+        if (file != null)
+            database.save(file);
+        return database;
+    }
+
+    private static int loads(int amount)
+    {
+        return amount <= 0 ? 0 : (amount + Gather.AMOUNT - 1) / Gather.AMOUNT;
+    }
+
+    @Override
+    public double estimate(GameState state)
+    {
+        int units = state.getUnitCount();
+        int goldCarriers = 0;
+        int woodCarriers = 0;
+        for (int slot = 1; slot < units; slot++)
+        {
+            int cargo = state.getCargo(slot);
+            if (cargo == GameState.NONE)
+                continue;
+            if (typeOf[cargo] == 0)
+                goldCarriers++;
+            else
+                woodCarriers++;
+        }
+        double total = 0;
+        for (int t = 0; t < TYPES.length; t++)
+        {
+            int need = problem.getRequired(TYPES[t])
+                    - state.getAmount(TYPES[t]);
+            int carriers = t == 0 ? goldCarriers : woodCarriers;
+            double cost = databases[t].lookup(loads(need), carriers, units - 1);
+            total = mode == Mode.MAX ? Math.max(total, cost) : total + cost;
+        }
+        return total;
+    }
+
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    public Problem getProblem()
+    {
+        return problem;
+    }
+}
@@ -8,6 +8,8 @@ import edu.cwru.sepia.environment.model.state.State;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 
 /*
  * Created by Devin on 3/15/15.
@@ -18,10 +20,65 @@ public class PlannerAgent extends Agent
     final int requiredWood;
     final int requiredGold;
     final boolean buildPeasants;
+    final boolean reduceOrder;
+    final boolean trips;
+    final boolean pruneProduce;
+    final String heuristic;
+    final File patternDatabases;
+    final int threads;
+    final String search;
+    final long budget;
+    final double[] weights;
+    final int batchSize;
     // Your PEAgent implementation. This prevents you from having to parse
     // the text file representation of your plan.
     PEAgent peAgent;
 
+    /**
+     * The first three parameters are the required wood, the required gold
+     * and whether peasants may be built. Optional parameters follow as
+     * {@code key=value} pairs:
+     * <ul>
+     * <li>{@code reduce=true|false} prune successors by partial-order
+     * reduction (default true)</li>
+     * <li>{@code trips=true|false} plan a gather and its deposit as one
+     * {@link edu.cwru.sepia.agent.planner.actions.Trip} (default true)</li>
+     * <li>{@code roi=true|false} prune productions whose peasant cannot pay
+     * for itself before the goal is met (default true)</li>
+     * <li>{@code heuristic=ff|add|deficit} closed-form h_FF or h_add style
+     * relaxed plan costs, or the missing amount; see
+     * {@link RelaxedPlanHeuristic}. None of them is admissible, so the A*
+     * searches are satisficing with them: the plan is usually but not
+     * always the quickest.</li>
+     * <li>{@code heuristic=pdb|pdb-add} the largest or the sum of the costs
+     * of the pattern databases; see {@link PatternDatabaseHeuristic}. The
+     * A* searches find the quickest plan with pdb, which is admissible,
+     * but not with pdb-add.</li>
+     * <li>The default heuristic is ff for the searches that do not promise
+     * the quickest plan (ara, gbfs and ehc) and pdb for the others.</li>
+     * <li>{@code pdbCache=<dir>} where pattern databases are saved and
+     * loaded, or {@code none} (default saves/pdb)</li>
+     * <li>{@code threads=<n>} search on n threads (default 1)</li>
+     * <li>{@code search=astar|batch|hda|ara|gbfs|ehc|numeric|temporal} A*
+     * on this thread, A* expanding batches in parallel ({@link BatchAstar}),
+     * hash-distributed A* ({@link HashDistributedAstar}), anytime weighted
+     * A* ({@link AnytimeRepairingAstar}), the satisficing
+     * {@link GreedyBestFirstSearch} and {@link EnforcedHillClimbing}, which
+     * fall back to A* if they fail, the {@link NumericPlanner}, which
+     * does not search states, or the {@link TemporalPlanner}, whose units
+     * do not wait for each other between actions (default astar for one
+     * thread, batch for more)</li>
+     * <li>{@code budget=<ms>} planning time of the anytime search (default
+     * 10000)</li>
+     * <li>{@code weights=<w1,w2,...>} weights of its passes (default
+     * 5,3,2,1.5,1)</li>
+     * <li>{@code batch=<k>} states expanded at a time with more than one
+     * thread (default twice the threads)</li>
+     * </ul>
+     *
+     * @param playernum Player number of this agent.
+     * @param params    Parameters of the agent.
+     */
     public PlannerAgent(int playernum, String[] params)
     {
         super(playernum);
@@ -34,25 +91,152 @@ public class PlannerAgent extends Agent
         requiredWood = Integer.parseInt(params[0]);
         requiredGold = Integer.parseInt(params[1]);
         buildPeasants = Boolean.parseBoolean(params[2]);
+        Map<String, String> options = parseOptions(params);
+        reduceOrder = Boolean.parseBoolean(
+                options.getOrDefault("reduce", "true"));
+        trips = Boolean.parseBoolean(options.getOrDefault("trips", "true"));
+        pruneProduce = Boolean.parseBoolean(
+                options.getOrDefault("roi", "true"));
+        String cache = options.getOrDefault("pdbCache", "saves/pdb");
+        patternDatabases = cache.equals("none") ? null : new File(cache);
+        threads = Integer.parseInt(options.getOrDefault("threads", "1"));
+        batchSize = Integer.parseInt(
+                options.getOrDefault("batch", String.valueOf(2 * threads)));
+        search = options.getOrDefault("search",
+                                      threads > 1 ? "batch" : "astar")
+                        .toLowerCase();
+        heuristic = options.getOrDefault("heuristic",
+                                         defaultHeuristic(search))
+                           .toLowerCase();
+        budget = Long.parseLong(options.getOrDefault("budget", "10000"));
+        weights = Arrays.stream(options.getOrDefault("weights", "5,3,2,1.5,1")
+                                       .split(","))
+                        .mapToDouble(w -> Double.parseDouble(w.trim()))
+                        .toArray();
         System.out.println("required wood: " + requiredWood + " required " +
                                    "gold: " + requiredGold + " build " +
                                    "Peasants: " + buildPeasants);
     }
 
+    /*
+     * The searches that give up the quickest plan for speed are guided best
+     * by h_FF; A* needs the admissible pattern databases to keep its plan
+     * the quickest.
+     */
+    private static String defaultHeuristic(String search)
+    {
+        switch (search)
+        {
+            case "ara":
+            case "gbfs":
+            case "ehc":
+                return "ff";
+            default:
+                return "pdb";
+        }
+    }
+
+    private static Function<GameState.Problem, Heuristic> heuristicFactory(
+            String name, File cache)
+    {
+        switch (name)
+        {
+            case "deficit":
+                return p -> new DeficitHeuristic();
+            case "add":
+                return p -> new RelaxedPlanHeuristic(
+                        p, RelaxedPlanHeuristic.Mode.ADD);
+            case "ff":
+                return p -> new RelaxedPlanHeuristic(
+                        p, RelaxedPlanHeuristic.Mode.FF);
+            case "pdb":
+                return p -> new PatternDatabaseHeuristic(
+                        p, PatternDatabaseHeuristic.Mode.MAX, cache);
+            case "pdb-add":
+                return p -> new PatternDatabaseHeuristic(
+                        p, PatternDatabaseHeuristic.Mode.ADD, cache);
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown heuristic: " + name);
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] params)
+    {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 3; i < params.length; i++)
+        {
+            String[] keyValue = params[i].split("=", 2);
+            if (keyValue.length == 2)
+                options.put(keyValue[0].trim(), keyValue[1].trim());
+            else
+                System.err.println("Ignoring malformed parameter: "
+                                           + params[i]);
+        }
+        return options;
+    }
+
     @Override
     public Map<Integer, Action> initialStep(State.StateView stateView,
                                             History.HistoryView historyView)
     {
-        Stack<StripsAction> plan = AstarSearch(new GameState(stateView,
-                                                             playernum,
-                                                             requiredGold,
-                                                             requiredWood,
-                                                             buildPeasants));
+        GameState.Problem problem =
+                GameState.describeProblem(stateView,
+                                          playernum,
+                                          requiredGold,
+                                          requiredWood,
+                                          buildPeasants)
+                         .reduceOrder(reduceOrder)
+                         .trips(trips)
+                         .pruneProduce(pruneProduce)
+                         .heuristic(heuristicFactory(heuristic,
+                                                     patternDatabases))
+                         .build();
+        if (search.equals("temporal"))
+        {
+            Schedule schedule = new TemporalPlanner(problem).plan();
+            if (schedule == null)
+            {
+                System.err.println("No plan was found");
+                return new HashMap<>();
+            }
+            saveLines(schedule.getEntries());
+            peAgent = new PEAgent(playernum, schedule);
+            return peAgent.initialStep(stateView, historyView);
+        }
+        GameState startState = new GameState(problem);
+        Stack<StripsAction> plan;
+        switch (search)
+        {
+            case "batch":
+                plan = batchSearch(startState);
+                break;
+            case "hda":
+                plan = toPlan(new HashDistributedAstar(threads)
+                                      .search(startState));
+                break;
+            case "ara":
+                plan = anytimeSearch(startState);
+                break;
+            case "gbfs":
+                plan = orElseAstar(new GreedyBestFirstSearch()
+                                           .search(startState), startState);
+                break;
+            case "ehc":
+                plan = orElseAstar(new EnforcedHillClimbing()
+                                           .search(startState), startState);
+                break;
+            case "numeric":
+                plan = new NumericPlanner(problem).plan();
+                break;
+            default:
+                plan = AstarSearch(startState);
+                break;
+        }
         if (plan == null)
         {
             System.err.println("No plan was found");
-            System.exit(1);
-            return null;
+            return new HashMap<>();
         }
         // write the plan to a text file
         savePlan(plan);
@@ -101,30 +285,79 @@ public class PlannerAgent extends Agent
 
     private Stack<StripsAction> AstarSearch(GameState startState)
     {
-        GameState parent = startState;
-        PriorityQueue<GameState> frontier = new PriorityQueue<>();
-        Set<GameState> explored = new HashSet<>();
-        frontier.add(parent);
-        boolean goalNotFound = true;
-        while (!frontier.isEmpty() && goalNotFound)
-        {
-            parent = frontier.poll();
-            Set<GameState> children = parent.generateChildren();
-            children.removeIf(explored::contains);
-            for (GameState child : children)
+        IndexedHeap<GameState> frontier = new IndexedHeap<>();
+        Map<GameState, GameState> explored = new HashMap<>();
+        frontier.offer(startState);
+        while (!frontier.isEmpty())
+        {
+            // Steps last as long as their actions, so the first goal found
+            // is not the quickest; only the first one polled is
+            GameState parent = frontier.poll();
+            if (parent.isGoal())
+                return generatePlan(parent);
+            explored.put(parent, parent);
+            Iterator<GameState> children = parent.successors();
+            while (children.hasNext())
             {
-                if (child.isGoal())
+                GameState child = children.next();
+                GameState closed = explored.get(child);
+                if (closed != null)
                 {
-                    parent = child;
-                    goalNotFound = false;
-                    break;
+                    if (child.getCost() >= closed.getCost())
+                        continue;
+                    explored.remove(child);
                 }
-                frontier.add(child);
+                if (!frontier.offer(child))
+                    frontier.get(child).wake(child);
             }
-            explored.add(parent);
         }
-        if (!goalNotFound)
-            return generatePlan(parent);
+        System.out.println("Error: unable to plan a path to goal!");
+        return null;
+    }
+
+    private Stack<StripsAction> anytimeSearch(GameState startState)
+    {
+        AnytimeRepairingAstar search =
+                new AnytimeRepairingAstar(weights, budget);
+        GameState goal = search.search(startState);
+        for (AnytimeRepairingAstar.Pass pass : search.getPasses())
+            System.out.printf("ARA* weight %.2f: cost %s, %d expanded, "
+                                      + "%d ms%n",
+                              pass.getWeight(),
+                              pass.getBest() == null
+                              ? "none"
+                              : pass.getBest().getCost(),
+                              pass.getExpanded(),
+                              pass.getMillis());
+        return toPlan(goal);
+    }
+
+    private Stack<StripsAction> batchSearch(GameState startState)
+    {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try
+        {
+            return toPlan(new BatchAstar(pool, batchSize).search(startState));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    private Stack<StripsAction> orElseAstar(GameState goal,
+                                            GameState startState)
+    {
+        if (goal != null)
+            return generatePlan(goal);
+        System.out.println("Satisficing search failed, falling back to A*");
+        return AstarSearch(startState);
+    }
+
+    private Stack<StripsAction> toPlan(GameState goal)
+    {
+        if (goal != null)
+            return generatePlan(goal);
         System.out.println("Error: unable to plan a path to goal!");
         return null;
     }
@@ -159,6 +392,16 @@ public class PlannerAgent extends Agent
             System.err.println("Cannot save null plan");
             return;
         }
+        List<StripsAction> lines = new ArrayList<>();
+        Stack<StripsAction> tempPlan = (Stack<StripsAction>) plan.clone();
+        while (!tempPlan.isEmpty())
+            lines.add(tempPlan.pop());
+        saveLines(lines);
+    }
+
+    // Writes one line per object to saves/plan.txt
+    private void saveLines(List<?> lines)
+    {
         File outputDir = new File("saves");
         outputDir.mkdirs();
         File outputFile = new File(outputDir, "plan.txt");
@@ -167,10 +410,9 @@ public class PlannerAgent extends Agent
         {
             outputFile.createNewFile();
             outputWriter = new PrintWriter(outputFile.getAbsolutePath());
-            Stack<StripsAction> tempPlan = (Stack<StripsAction>) plan.clone();
-            while (!tempPlan.isEmpty())
+            for (Object line : lines)
             {
-                outputWriter.println(tempPlan.pop().toString());
+                outputWriter.println(line.toString());
             }
         }
         catch (FileNotFoundException e)
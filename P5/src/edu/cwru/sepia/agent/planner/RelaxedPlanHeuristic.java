@@ -0,0 +1,206 @@
+package edu.cwru.sepia.agent.planner;
+
+import edu.cwru.sepia.agent.planner.GameState.Problem;
+import edu.cwru.sepia.agent.planner.GameState.Resource;
+import edu.cwru.sepia.agent.planner.GameState.Unit;
+import edu.cwru.sepia.agent.planner.actions.Deposit;
+import edu.cwru.sepia.agent.planner.actions.Gather;
+import edu.cwru.sepia.agent.planner.actions.StripsAction;
+import edu.cwru.sepia.environment.model.state.ResourceType;
+
+import java.util.Comparator;
+
+import static edu.cwru.sepia.environment.model.state.ResourceType.GOLD;
+import static edu.cwru.sepia.environment.model.state.ResourceType.WOOD;
+
+/**
+ * Closed-form cost of a delete-relaxed plan. No planning graph is built and
+ * the preconditions and effects of the {@link StripsAction}s are not read:
+ * the relaxed task of this domain is small enough that its plan is written
+ * out here, with the {@link Gather} and {@link Deposit} costs taken from the
+ * durations of the problem.
+ * <p>
+ * With deletes ignored, a peasant that carries nothing stays free for every
+ * trip, a load that is being carried is worth its deposit, and what is
+ * still missing of a type comes from round trips, gather plus deposit, from
+ * the cheapest resources first, each giving at most what it holds. Producing
+ * a peasant never makes the relaxed plan cheaper, so it is left out. The
+ * costs and the orders of the resources are built once per problem, so an
+ * estimate allocates nothing and takes O(resources * units).
+ * <p>
+ * If no peasant is free, trips first need a carried load to be deposited.
+ * The modes differ only in how often that is paid for:
+ * <ul>
+ * <li>{@link Mode#ADD}: once by every type that needs trips, as h_add pays
+ * for a shared precondition once per goal.</li>
+ * <li>{@link Mode#FF}: at most once, and not at all if the plan already
+ * deposits a carried load, as in the single relaxed plan of h_FF.</li>
+ * </ul>
+ * The costs of all trips are added up as if one peasant made them, so
+ * neither mode is admissible.
+ * <p>
+ * The helpful actions are those that start the relaxed plan: a deposit of
+ * a type that is still missing, and a gather from a resource that the
+ * relaxed plan takes trips from.
+ */
+public class RelaxedPlanHeuristic implements Heuristic
+{
+    private static final ResourceType[] TYPES = {GOLD, WOOD};
+
+    /**
+     * How the costs of the goals are combined.
+     */
+    public enum Mode
+    {
+        ADD, FF
+    }
+
+    private final Problem problem;
+    private final Mode mode;
+    private final double[] depositCost;
+    private final double[] tripCost;
+    private final int[][] depositOrder;
+    private final int[][] tripOrder;
+
+    public RelaxedPlanHeuristic(Problem problem, Mode mode)
+    {
+        this.problem = problem;
+        this.mode = mode;
+        int resources = problem.getResources().size();
+        this.depositCost = new double[resources];
+        this.tripCost = new double[resources];
+        for (Resource resource : problem.getResources())
+        {
+            int slot = resource.getSlot();
+            depositCost[slot] = problem.getDepositDuration(slot);
+            tripCost[slot] = problem.getGatherDuration(slot)
+                    + problem.getDepositDuration(slot);
+        }
+        this.depositOrder = new int[TYPES.length][];
+        this.tripOrder = new int[TYPES.length][];
+        for (int t = 0; t < TYPES.length; t++)
+        {
+            depositOrder[t] = order(TYPES[t], depositCost);
+            tripOrder[t] = order(TYPES[t], tripCost);
+        }
+    }
+
+    // Slots of the resources of a type, cheapest first
+    private int[] order(ResourceType type, double[] costs)
+    {
+        return problem.getResources()
+                      .stream()
+                      .filter(r -> r.getType() == type)
+                      .map(Resource::getSlot)
+                      .sorted(Comparator.comparingDouble(s -> costs[s]))
+                      .mapToInt(Integer::intValue)
+                      .toArray();
+    }
+
+    @Override
+    public double estimate(GameState state)
+    {
+        int units = state.getUnitCount();
+        boolean free = false;
+        double unloadCost = Double.POSITIVE_INFINITY;
+        for (int slot = 1; slot < units; slot++)
+        {
+            int cargo = state.getCargo(slot);
+            if (cargo == GameState.NONE)
+                free = true;
+            else
+                unloadCost = Math.min(unloadCost, depositCost[cargo]);
+        }
+        double freeCost = free ? 0 : unloadCost;
+        boolean freeInPlan = free;
+        double total = 0;
+        for (int t = 0; t < TYPES.length; t++)
+        {
+            int need = missing(state, TYPES[t]);
+            for (int r : depositOrder[t])
+            {
+                for (int slot = 1; slot < units && need > 0; slot++)
+                {
+                    if (state.getCargo(slot) != r)
+                        continue;
+                    total += depositCost[r];
+                    need -= state.getCarried(slot);
+                    freeInPlan = true;
+                }
+            }
+            if (need <= 0)
+                continue;
+            if (mode == Mode.ADD)
+            {
+                total += freeCost;
+            }
+            else if (!freeInPlan)
+            {
+                total += freeCost;
+                freeInPlan = true;
+            }
+            for (int r : tripOrder[t])
+            {
+                int taken = Math.min(need, state.getRemaining(r));
+                if (taken <= 0)
+                    continue;
+                int trips = (taken + Gather.AMOUNT - 1) / Gather.AMOUNT;
+                total += trips * tripCost[r];
+                need -= taken;
+                if (need <= 0)
+                    break;
+            }
+            if (need > 0)
+                return Double.POSITIVE_INFINITY;
+        }
+        return total;
+    }
+
+    @Override
+    public boolean isHelpful(GameState state, StripsAction action)
+    {
+        if (action instanceof Deposit)
+        {
+            Unit depositor = ((Deposit) action).getDepositor();
+            int cargo = state.getCargo(depositor.getId());
+            return cargo != GameState.NONE
+                    && missing(state, problem.getResource(cargo).getType()) > 0;
+        }
+        if (!(action instanceof Gather))
+            return false;
+        Resource resource = ((Gather) action).getGatherFrom();
+        int t = resource.getType() == GOLD ? 0 : 1;
+        int need = missing(state, TYPES[t]);
+        for (int slot = 1; slot < state.getUnitCount(); slot++)
+        {
+            int cargo = state.getCargo(slot);
+            if (cargo != GameState.NONE
+                    && problem.getResource(cargo).getType() == TYPES[t])
+                need -= state.getCarried(slot);
+        }
+        for (int r : tripOrder[t])
+        {
+            if (need <= 0)
+                return false;
+            if (r == resource.getSlot())
+                return state.getRemaining(r) > 0;
+            need -= state.getRemaining(r);
+        }
+        return false;
+    }
+
+    private int missing(GameState state, ResourceType type)
+    {
+        return problem.getRequired(type) - state.getAmount(type);
+    }
+
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    public Problem getProblem()
+    {
+        return problem;
+    }
+}
@@ -0,0 +1,204 @@
+package edu.cwru.sepia.agent.planner;
+
+import edu.cwru.sepia.agent.planner.actions.StripsAction;
+
+import java.util.*;
+
+/**
+ * A timed plan: the game step at which each unit starts each of its
+ * actions. Units start and finish on their own instead of in lockstep.
+ * <p>
+ * The {@link PEAgent} does not trust the times, since SEPIA may take longer
+ * than planned. It keeps their order instead: an action starts once its
+ * unit is free and every action planned to end by its start has ended, so
+ * whatever those actions deposit or produce is there.
+ */
+public class Schedule
+{
+    private final List<Entry> entries;
+    private final Map<Integer, Deque<Entry>> queues;
+    private List<Entry> byEnd;
+    private int finishedByEnd;
+    private int finished;
+
+    public Schedule()
+    {
+        this.entries = new ArrayList<>();
+        this.queues = new TreeMap<>();
+    }
+
+    /**
+     * Adds an action. Actions of a unit must be added in the order it takes
+     * them.
+     *
+     * @param start Game step at which the action starts.
+     * @param end   Game step at which it is planned to end.
+     * @param unit  Slot of the unit that takes it.
+     */
+    public void add(long start, long end, int unit, StripsAction action)
+    {
+        Entry entry = new Entry(start, end, unit, action);
+        entries.add(entry);
+        queues.computeIfAbsent(unit, u -> new ArrayDeque<>()).add(entry);
+        byEnd = null;
+    }
+
+    /**
+     * @return Every action, in the order they start.
+     */
+    public List<Entry> getEntries()
+    {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparingLong(Entry::getStart));
+        return sorted;
+    }
+
+    /**
+     * @return Game step at which the last action is planned to end.
+     */
+    public long getMakespan()
+    {
+        return entries.stream().mapToLong(Entry::getEnd).max().orElse(0);
+    }
+
+    /**
+     * @return Slots of the units that still have actions to start.
+     */
+    public Set<Integer> getWaitingUnits()
+    {
+        Set<Integer> units = new TreeSet<>();
+        queues.forEach((unit, queue) -> {
+            if (!queue.isEmpty())
+                units.add(unit);
+        });
+        return units;
+    }
+
+    /**
+     * Takes the next action of a unit if every action planned to end by its
+     * start has been finished.
+     *
+     * @return The action, or null if the unit has to wait.
+     */
+    public Entry start(int unit)
+    {
+        Deque<Entry> queue = queues.get(unit);
+        if (queue == null || queue.isEmpty())
+            return null;
+        Entry next = queue.peek();
+        if (endingBy(next.getStart()) > finishedByEnd)
+            return null;
+        return queue.poll();
+    }
+
+    /**
+     * Records that a started action has ended.
+     */
+    public void finish(Entry entry)
+    {
+        entry.finished = true;
+        finished++;
+        sortByEnd();
+        while (finishedByEnd < byEnd.size()
+                && byEnd.get(finishedByEnd).isFinished())
+            finishedByEnd++;
+    }
+
+    /**
+     * @return True once every action has been finished.
+     */
+    public boolean isDone()
+    {
+        return finished == entries.size();
+    }
+
+    // Number of actions planned to end by the time. They are the first ones
+    // by end, and all of them are finished once finishedByEnd reaches it.
+    private int endingBy(long time)
+    {
+        sortByEnd();
+        int low = 0;
+        int high = byEnd.size();
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (byEnd.get(middle).getEnd() <= time)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private void sortByEnd()
+    {
+        if (byEnd != null)
+            return;
+        byEnd = new ArrayList<>(entries);
+        byEnd.sort(Comparator.comparingLong(Entry::getEnd));
+        finishedByEnd = 0;
+        while (finishedByEnd < byEnd.size()
+                && byEnd.get(finishedByEnd).isFinished())
+            finishedByEnd++;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        for (Entry entry : getEntries())
+            builder.append(entry).append(System.lineSeparator());
+        return builder.toString();
+    }
+
+    /**
+     * An action of one unit with its planned start and end.
+     */
+    public static class Entry
+    {
+        private final long start;
+        private final long end;
+        private final int unit;
+        private final StripsAction action;
+        private boolean finished;
+
+        private Entry(long start, long end, int unit, StripsAction action)
+        {
+            this.start = start;
+            this.end = end;
+            this.unit = unit;
+            this.action = action;
+        }
+
+        public long getStart()
+        {
+            return start;
+        }
+
+        public long getEnd()
+        {
+            return end;
+        }
+
+        public int getUnit()
+        {
+            return unit;
+        }
+
+        public StripsAction getAction()
+        {
+            return action;
+        }
+
+        public boolean isFinished()
+        {
+            return finished;
+        }
+
+        @Override
+        public String toString()
+        {
+            return start + "-" + end + " unit " + unit + ": " + action;
+        }
+    }
+}
@@ -0,0 +1,505 @@
+package edu.cwru.sepia.agent.planner;
+
+import edu.cwru.sepia.agent.planner.GameState.Problem;
+import edu.cwru.sepia.agent.planner.GameState.Resource;
+import edu.cwru.sepia.agent.planner.actions.Gather;
+import edu.cwru.sepia.agent.planner.actions.Produce;
+import edu.cwru.sepia.agent.planner.actions.StripsAction;
+import edu.cwru.sepia.agent.planner.actions.Trip;
+import edu.cwru.sepia.environment.model.state.ResourceType;
+
+import java.util.*;
+
+import static edu.cwru.sepia.environment.model.state.ResourceType.GOLD;
+import static edu.cwru.sepia.environment.model.state.ResourceType.WOOD;
+
+/**
+ * Plans with durative actions, so that units start and finish on their own
+ * instead of switching actions in lockstep. A peasant makes a {@link Trip}
+ * that lasts its gather plus its deposit, and the town hall produces a
+ * peasant in the time of the template.
+ * <p>
+ * The search runs over decision epochs: the game steps at which some unit
+ * finishes. At an epoch every free unit either starts an action or waits
+ * for the next epoch. Nothing changes between epochs, so starting later
+ * than an epoch never helps. A trip takes what it gathers from the resource
+ * when it starts and deposits it when it ends; a production spends the gold
+ * when it starts and adds the peasant when it ends.
+ * <p>
+ * A* orders the epochs by their time plus a bound on the time that is left,
+ * so the schedule found has the shortest makespan. Free peasants are
+ * interchangeable, so only one of each set of choices that differ by who
+ * goes where is tried, and equal epochs are told apart by their units up to
+ * that order and the time that is left on each action.
+ */
+public class TemporalPlanner
+{
+    private static final ResourceType[] TYPES = {GOLD, WOOD};
+    private static final int WAIT = -1;
+
+    private final Problem problem;
+    private final long[] tripDurations;
+    private final long produceDuration;
+    private final int goldCost;
+    private final int woodCost;
+    private final int[] typeOf;
+    private int expanded;
+
+    public TemporalPlanner(Problem problem)
+    {
+        this.problem = problem;
+        int resources = problem.getResources().size();
+        this.tripDurations = new long[resources];
+        this.typeOf = new int[resources];
+        for (Resource resource : problem.getResources())
+        {
+            int slot = resource.getSlot();
+            tripDurations[slot] = Math.max(
+                    1, problem.getGatherDuration(slot)
+                            + problem.getDepositDuration(slot));
+            typeOf[slot] = resource.getType() == GOLD ? 0 : 1;
+        }
+        this.produceDuration = Math.max(1, problem.getProduceDuration());
+        this.goldCost = problem.getUnit(0).getGoldCostToProduce();
+        this.woodCost = problem.getUnit(0).getWoodCostToProduce();
+    }
+
+    /**
+     * @return The schedule with the shortest makespan, or null if the goal
+     * cannot be reached.
+     */
+    public Schedule plan()
+    {
+        IndexedHeap<Epoch> open = new IndexedHeap<>();
+        Map<Epoch, Long> closed = new HashMap<>();
+        expanded = 0;
+        open.offer(new Epoch());
+        while (!open.isEmpty())
+        {
+            Epoch epoch = open.poll();
+            if (epoch.isGoal())
+                return epoch.toSchedule();
+            closed.put(epoch, epoch.time);
+            expanded++;
+            for (Epoch child : epoch.successors())
+            {
+                if (child.estimate == Double.POSITIVE_INFINITY)
+                    continue;
+                Long known = closed.get(child);
+                if (known != null)
+                {
+                    if (child.time >= known)
+                        continue;
+                    closed.remove(child);
+                }
+                open.offer(child);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Number of epochs expanded by the last plan.
+     */
+    public int getExpanded()
+    {
+        return expanded;
+    }
+
+    private static long loads(long amount)
+    {
+        return amount <= 0 ? 0 : (amount + Gather.AMOUNT - 1) / Gather.AMOUNT;
+    }
+
+    /*
+     * The units at one decision epoch. Peasant i is in slot i + 1. A
+     * peasant whose action ends by the time of the epoch is free; one that
+     * is still on a trip carries what it took.
+     */
+    private class Epoch implements Comparable<Epoch>
+    {
+        private final Epoch parent;
+        private final List<long[]> starts;
+        private long time;
+        private final int[] amount;
+        private final int[] remaining;
+        private long producedAt;
+        private long[] until;
+        private int[] cargo;
+        private int[] carried;
+        private long[] key;
+        private int hash;
+        private double estimate;
+
+        private Epoch()
+        {
+            this.parent = null;
+            this.starts = new ArrayList<>();
+            this.time = 0;
+            this.amount = new int[TYPES.length];
+            for (int t = 0; t < TYPES.length; t++)
+                amount[t] = problem.getCurrentAmounts()
+                                   .getOrDefault(TYPES[t], 0);
+            this.remaining = new int[problem.getResources().size()];
+            for (Resource resource : problem.getResources())
+                remaining[resource.getSlot()] =
+                        problem.getInitialRemaining(resource);
+            this.producedAt = 0;
+            int peasants = problem.getUnits().size() - 1;
+            this.until = new long[peasants];
+            this.cargo = new int[peasants];
+            Arrays.fill(cargo, GameState.NONE);
+            this.carried = new int[peasants];
+            evaluate();
+        }
+
+        private Epoch(Epoch parent)
+        {
+            this.parent = parent;
+            this.starts = new ArrayList<>();
+            this.time = parent.time;
+            this.amount = parent.amount.clone();
+            this.remaining = parent.remaining.clone();
+            this.producedAt = parent.producedAt;
+            this.until = parent.until.clone();
+            this.cargo = parent.cargo.clone();
+            this.carried = parent.carried.clone();
+        }
+
+        private boolean isGoal()
+        {
+            return amount[0] >= problem.getRequired(GOLD)
+                    && amount[1] >= problem.getRequired(WOOD);
+        }
+
+        private boolean isProducing()
+        {
+            return producedAt > time;
+        }
+
+        /*
+         * Every way for the free units to start actions or wait, each
+         * followed to the next epoch. Free peasants take their choices in
+         * slot order and never choose a resource before the one the peasant
+         * before them chose, waiting last.
+         */
+        private List<Epoch> successors()
+        {
+            List<Epoch> children = new ArrayList<>();
+            List<Integer> free = new ArrayList<>();
+            for (int i = 0; i < until.length; i++)
+                if (until[i] <= time)
+                    free.add(i);
+            boolean canProduce = problem.considerBuildingPeasants()
+                    && !isProducing()
+                    && amount[0] >= goldCost
+                    && amount[1] >= woodCost;
+            int[] choices = new int[free.size()];
+            for (int produce = 0; produce <= (canProduce ? 1 : 0); produce++)
+                assign(free, choices, 0, 0, produce == 1, children);
+            return children;
+        }
+
+        private void assign(List<Integer> free,
+                            int[] choices,
+                            int index,
+                            int first,
+                            boolean produce,
+                            List<Epoch> children)
+        {
+            if (index == free.size())
+            {
+                Epoch child = start(free, choices, produce);
+                if (child != null)
+                    children.add(child);
+                return;
+            }
+            int resources = remaining.length;
+            for (int r = first; r <= resources; r++)
+            {
+                choices[index] = r == resources ? WAIT : r;
+                assign(free, choices, index + 1, r, produce, children);
+            }
+        }
+
+        /*
+         * Starts the chosen actions and moves on to the next epoch, or
+         * returns null if a choice is not possible or not useful, or if
+         * nothing is left to end.
+         */
+        private Epoch start(List<Integer> free, int[] choices, boolean produce)
+        {
+            Epoch child = new Epoch(this);
+            long[] need = needs();
+            for (int n = 0; n < free.size(); n++)
+            {
+                int r = choices[n];
+                if (r == WAIT)
+                    continue;
+                int t = typeOf[r];
+                // A trip that neither the goal nor a production needs is no
+                // better than waiting
+                boolean spends = t == 0 ? goldCost > 0 : woodCost > 0;
+                boolean useful = need[t] > 0
+                        || problem.considerBuildingPeasants() && spends;
+                if (!useful || child.remaining[r] <= 0)
+                    return null;
+                int i = free.get(n);
+                int taken = Math.min(Gather.AMOUNT, child.remaining[r]);
+                child.remaining[r] -= taken;
+                child.cargo[i] = r;
+                child.carried[i] = taken;
+                child.until[i] = time + tripDurations[r];
+                need[t] -= taken;
+                child.starts.add(new long[]{i + 1, r});
+            }
+            if (produce)
+            {
+                child.amount[0] -= goldCost;
+                child.amount[1] -= woodCost;
+                child.producedAt = time + produceDuration;
+                child.starts.add(new long[]{0, WAIT});
+            }
+            if (!child.advance())
+                return null;
+            child.evaluate();
+            return child;
+        }
+
+        // Missing amounts, counting what is on its way as deposited
+        private long[] needs()
+        {
+            long[] need = new long[TYPES.length];
+            for (int t = 0; t < TYPES.length; t++)
+                need[t] = problem.getRequired(TYPES[t]) - amount[t];
+            for (int i = 0; i < until.length; i++)
+                if (until[i] > time && cargo[i] != GameState.NONE)
+                    need[typeOf[cargo[i]]] -= carried[i];
+            return need;
+        }
+
+        /*
+         * Moves to the next game step at which an action ends and applies
+         * everything that ends then. False if nothing is left to end.
+         */
+        private boolean advance()
+        {
+            long next = Long.MAX_VALUE;
+            for (long end : until)
+                if (end > time)
+                    next = Math.min(next, end);
+            if (isProducing())
+                next = Math.min(next, producedAt);
+            if (next == Long.MAX_VALUE)
+                return false;
+            time = next;
+            for (int i = 0; i < until.length; i++)
+            {
+                if (until[i] != time || cargo[i] == GameState.NONE)
+                    continue;
+                amount[typeOf[cargo[i]]] += carried[i];
+                cargo[i] = GameState.NONE;
+                carried[i] = 0;
+            }
+            if (producedAt == time)
+            {
+                until = Arrays.copyOf(until, until.length + 1);
+                until[until.length - 1] = time;
+                cargo = Arrays.copyOf(cargo, cargo.length + 1);
+                cargo[cargo.length - 1] = GameState.NONE;
+                carried = Arrays.copyOf(carried, carried.length + 1);
+            }
+            return true;
+        }
+
+        /*
+         * A lower bound on the time that is left, the larger of two:
+         * - Each missing type needs one more of its trips to end, or one of
+         *   its loads on the way to arrive.
+         * - The loads still missing once those on the way arrive take trips
+         *   of at least the quickest duration, made one after another by
+         *   each peasant from when it is free, and by each peasant that may
+         *   still be produced from when it could exist.
+         * Resources that cannot cover what is missing make the epoch a dead
+         * end.
+         */
+        private void evaluate()
+        {
+            long[] need = needs();
+            long quickest = Long.MAX_VALUE;
+            long[] quickestOf = {Long.MAX_VALUE, Long.MAX_VALUE};
+            long[] left = new long[TYPES.length];
+            for (int r = 0; r < remaining.length; r++)
+            {
+                if (remaining[r] <= 0)
+                    continue;
+                int t = typeOf[r];
+                left[t] += remaining[r];
+                quickestOf[t] = Math.min(quickestOf[t], tripDurations[r]);
+            }
+            long firstFree = Long.MAX_VALUE;
+            for (long end : until)
+                firstFree = Math.min(firstFree, Math.max(0, end - time));
+            if (isProducing())
+                firstFree = Math.min(firstFree, producedAt - time);
+            else if (problem.considerBuildingPeasants())
+                firstFree = Math.min(firstFree, produceDuration);
+            long bound = 0;
+            for (int t = 0; t < TYPES.length; t++)
+            {
+                if (need[t] > left[t])
+                {
+                    estimate = Double.POSITIVE_INFINITY;
+                    return;
+                }
+                if (need[t] > 0)
+                    quickest = Math.min(quickest, quickestOf[t]);
+                if (amount[t] >= problem.getRequired(TYPES[t]))
+                    continue;
+                long first = quickestOf[t] == Long.MAX_VALUE
+                             || firstFree == Long.MAX_VALUE
+                             ? Long.MAX_VALUE
+                             : firstFree + quickestOf[t];
+                for (int i = 0; i < until.length; i++)
+                    if (until[i] > time && cargo[i] != GameState.NONE
+                            && typeOf[cargo[i]] == t)
+                        first = Math.min(first, until[i] - time);
+                bound = Math.max(bound, first);
+            }
+            long trips = loads(need[0]) + loads(need[1]);
+            if (trips > 0)
+                bound = Math.max(bound, timeFor(trips, quickest));
+            estimate = bound == Long.MAX_VALUE
+                       ? Double.POSITIVE_INFINITY
+                       : time + bound;
+        }
+
+        // Least time in which the peasants can end that many trips
+        private long timeFor(long trips, long duration)
+        {
+            long high = duration;
+            while (capacity(high, duration) < trips)
+            {
+                if (high > Long.MAX_VALUE / 4)
+                    return Long.MAX_VALUE;
+                high *= 2;
+            }
+            long low = 0;
+            while (low < high)
+            {
+                long middle = (low + high) >>> 1;
+                if (capacity(middle, duration) >= trips)
+                    high = middle;
+                else
+                    low = middle + 1;
+            }
+            return low;
+        }
+
+        // Trips of the duration the peasants can end within the time
+        private long capacity(long within, long duration)
+        {
+            long trips = 0;
+            for (long end : until)
+                trips += Math.max(0, within - Math.max(0, end - time))
+                        / duration;
+            long next = 0;
+            if (isProducing())
+            {
+                next = producedAt - time;
+                trips += Math.max(0, within - next) / duration;
+            }
+            if (problem.considerBuildingPeasants())
+                for (long at = next + produceDuration; at < within;
+                     at += produceDuration)
+                    trips += (within - at) / duration;
+            return trips;
+        }
+
+        private Schedule toSchedule()
+        {
+            List<Epoch> path = new ArrayList<>();
+            for (Epoch epoch = this; epoch.parent != null; epoch = epoch.parent)
+                path.add(epoch);
+            Collections.reverse(path);
+            Schedule schedule = new Schedule();
+            for (Epoch epoch : path)
+            {
+                long start = epoch.parent.time;
+                for (long[] begun : epoch.starts)
+                {
+                    int slot = (int) begun[0];
+                    int r = (int) begun[1];
+                    StripsAction action;
+                    long end;
+                    if (slot == 0)
+                    {
+                        action = new Produce(problem.getUnit(0),
+                                             goldCost,
+                                             woodCost);
+                        end = start + produceDuration;
+                    }
+                    else
+                    {
+                        action = new Trip(problem.getUnit(slot),
+                                          problem.getResource(r));
+                        end = start + tripDurations[r];
+                    }
+                    // Actions still going at the goal add nothing to it
+                    if (end <= time)
+                        schedule.add(start, end, slot, action);
+                }
+            }
+            return schedule;
+        }
+
+        // Units in a canonical order, with the time left on their actions
+        private long[] key()
+        {
+            if (key != null)
+                return key;
+            int peasants = until.length;
+            key = new long[3 + remaining.length + peasants];
+            key[0] = amount[0];
+            key[1] = amount[1];
+            key[2] = Math.max(0, producedAt - time);
+            for (int r = 0; r < remaining.length; r++)
+                key[3 + r] = remaining[r];
+            long[] units = new long[peasants];
+            for (int i = 0; i < peasants; i++)
+                units[i] = Math.max(0, until[i] - time) << 24
+                        | (long) (cargo[i] + 1) << 12
+                        | carried[i];
+            Arrays.sort(units);
+            System.arraycopy(units, 0, key, 3 + remaining.length, peasants);
+            return key;
+        }
+
+        @Override
+        public int compareTo(Epoch epoch)
+        {
+            int byEstimate = Double.compare(estimate, epoch.estimate);
+            return byEstimate != 0
+                   ? byEstimate
+                   : Long.compare(epoch.time, time);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Epoch))
+                return false;
+            return Arrays.equals(key(), ((Epoch) o).key());
+        }
+
+        @Override
+        public int hashCode()
+        {
+            if (hash == 0)
+                hash = Arrays.hashCode(key());
+            return hash;
+        }
+    }
+}
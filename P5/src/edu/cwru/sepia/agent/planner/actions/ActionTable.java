@@ -0,0 +1,126 @@
+package edu.cwru.sepia.agent.planner.actions;
+
+import edu.cwru.sepia.agent.planner.GameState;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Every grounded action of a problem under an int id, so that the search
+ * picks joint actions as arrays of ids instead of building action objects
+ * and sets for every state it expands. The action of an id is one shared
+ * instance; actions are immutable, so every state and every thread of a
+ * search can use it.
+ * <p>
+ * What a unit may do next depends only on its slot and its status, so the
+ * ids of those choices are kept per slot and status. They come from the
+ * effects of the action that leaves the unit in that status, the first
+ * time a state asks for them. Slots grow with the peasants that are
+ * produced, so the table grows with them.
+ */
+public class ActionTable
+{
+    private static final StripsEnum[] STATUSES = StripsEnum.values();
+
+    private final Map<StripsAction, Integer> ids;
+    // Written under the lock once filled, read without it
+    private volatile StripsAction[] actions;
+    private volatile int[] resources;
+    private volatile boolean[] idles;
+    private volatile int[][] choices;
+
+    public ActionTable()
+    {
+        this.ids = new HashMap<>();
+        this.actions = new StripsAction[0];
+        this.resources = new int[0];
+        this.idles = new boolean[0];
+        this.choices = new int[0][];
+    }
+
+    /**
+     * @param slot Slot of the unit in the state.
+     * @return Ids of the actions the unit may take next, before checking
+     * their preconditions.
+     */
+    public int[] getChoices(GameState state, int slot)
+    {
+        int key = slot * STATUSES.length + state.getStatus(slot).ordinal();
+        int[][] known = choices;
+        if (key < known.length && known[key] != null)
+            return known[key];
+        return compile(state, slot, key);
+    }
+
+    public StripsAction get(int id)
+    {
+        return actions[id];
+    }
+
+    /**
+     * @return Slot of the resource the action gathers from, or
+     * {@link GameState#NONE} if it does not gather.
+     */
+    public int getResource(int id)
+    {
+        return resources[id];
+    }
+
+    public boolean isIdle(int id)
+    {
+        return idles[id];
+    }
+
+    /**
+     * @param joint One action id per unit.
+     * @return The joint action, in the copy-on-write form a state keeps.
+     */
+    public StripsActionSet toActionSet(int[] joint)
+    {
+        StripsAction[] step = new StripsAction[joint.length];
+        StripsAction[] known = actions;
+        for (int unit = 0; unit < joint.length; unit++)
+            step[unit] = known[joint[unit]];
+        return new StripsActionSet(
+                new CopyOnWriteArraySet<>(Arrays.asList(step)));
+    }
+
+    private synchronized int[] compile(GameState state, int slot, int key)
+    {
+        if (key < choices.length && choices[key] != null)
+            return choices[key];
+        StripsAction last = state.lastActions().get(slot);
+        int[] compiled = last.effects(state)
+                             .stream()
+                             .mapToInt(this::register)
+                             .sorted()
+                             .toArray();
+        int[][] grown = Arrays.copyOf(choices,
+                                      Math.max(key + 1, 2 * choices.length));
+        grown[key] = compiled;
+        choices = grown;
+        return compiled;
+    }
+
+    // Caller holds the lock
+    private int register(StripsAction action)
+    {
+        Integer id = ids.get(action);
+        if (id != null)
+            return id;
+        int next = ids.size();
+        ids.put(action, next);
+        StripsAction[] grownActions = Arrays.copyOf(actions, next + 1);
+        int[] grownResources = Arrays.copyOf(resources, next + 1);
+        boolean[] grownIdles = Arrays.copyOf(idles, next + 1);
+        grownActions[next] = action;
+        grownResources[next] = action instanceof Gather
+                               ? ((Gather) action).getGatherFrom().getSlot()
+                               : GameState.NONE;
+        grownIdles[next] = action instanceof Idle;
+        resources = grownResources;
+        idles = grownIdles;
+        actions = grownActions;
+        return next;
+    }
+}
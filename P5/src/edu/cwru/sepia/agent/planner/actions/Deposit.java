@@ -10,35 +10,44 @@ import java.util.Objects;
 import java.util.Set;
 
 import static edu.cwru.sepia.agent.planner.actions.StripsEnum.DEPOSIT;
+import static edu.cwru.sepia.agent.planner.actions.StripsEnum.GATHER;
 
 public class Deposit implements StripsAction
 {
     private final Unit depositor;
     private final int amount;
-    private final long costFactor;
 
-    public Deposit(Unit depositor, int amount, long costFactor)
+    public Deposit(Unit depositor, int amount)
     {
         this.depositor = depositor;
         this.amount = amount;
-        this.costFactor = costFactor;
     }
 
     @Override
     public boolean preconditionsMet(GameState state)
     {
-        return state.getUnitTracker().containsValue(DEPOSIT);
+        int slot = getDepositor().getId();
+        return getDepositor().getValidActions().contains(DEPOSIT)
+                && state.getStatus(slot) == GATHER
+                && state.getCargo(slot) != GameState.NONE;
     }
 
     @Override
     public GameState apply(GameState state)
     {
         GameState applied = state.copy();
-        applied.deposit(getDepositor(), 100);
+        execute(applied);
         applied.getCreationActions().getActions().add(this);
+        applied.evaluate();
         return applied;
     }
 
+    @Override
+    public void execute(GameState state)
+    {
+        state.deposit(getDepositor(), getAmount());
+    }
+
     @Override
     public Set<StripsAction> effects(GameState state)
     {
@@ -50,9 +59,12 @@ public class Deposit implements StripsAction
     }
 
     @Override
-    public long computeCostFactor()
+    public long computeDuration(GameState state)
     {
-        return getCostFactor();
+        int cargo = state.getCargo(getDepositor().getId());
+        return cargo == GameState.NONE
+               ? 0
+               : state.getProblem().getDepositDuration(cargo);
     }
 
     @Override
@@ -69,10 +81,22 @@ public class Deposit implements StripsAction
         return ActionType.COMPOUNDDEPOSIT;
     }
 
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        Deposit deposit = (Deposit) o;
+        return getAmount() == deposit.getAmount()
+                && getDepositor().equals(deposit.getDepositor());
+    }
+
     @Override
     public int hashCode()
     {
-        return Objects.hash(getDepositor(), getAmount(), getCostFactor());
+        return Objects.hash(getDepositor(), getAmount());
     }
 
     public Unit getDepositor()
@@ -84,9 +108,4 @@ public class Deposit implements StripsAction
     {
         return amount;
     }
-
-    public long getCostFactor()
-    {
-        return costFactor;
-    }
 }
@@ -12,10 +12,14 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 import static edu.cwru.sepia.agent.planner.actions.StripsEnum.GATHER;
-import static edu.cwru.sepia.agent.planner.actions.StripsEnum.IDLE;
 
 public class Gather implements StripsAction
 {
+    /**
+     * Amount a peasant carries back from a single trip.
+     */
+    public static final int AMOUNT = 100;
+
     private final Unit gatherer;
     private final Resource gatherFrom;
 
@@ -28,37 +32,55 @@ public class Gather implements StripsAction
     @Override
     public boolean preconditionsMet(GameState state)
     {
-        return state.getUnitTracker().containsAnyValue(GATHER, IDLE);
+        int slot = getGatherer().getId();
+        return getGatherer().getValidActions().contains(GATHER)
+                && state.getStatus(slot) != GATHER
+                && state.getCargo(slot) == GameState.NONE
+                && state.getRemaining(getGatherFrom().getSlot()) > 0;
     }
 
     @Override
     public GameState apply(GameState state)
     {
         GameState applied = state.copy();
-        applied.gather(getGatherer(), getGatherFrom(), 100);
+        execute(applied);
         applied.getCreationActions().getActions().add(this);
+        applied.evaluate();
         return applied;
     }
 
+    @Override
+    public void execute(GameState state)
+    {
+        state.gather(getGatherer(), getGatherFrom(), AMOUNT);
+    }
+
     @Override
     public Set<StripsAction> effects(GameState state)
     {
         StripsAction deposit =
-                new Deposit(getGatherer(), 100, computeCostFactor());
+                new Deposit(getGatherer(), AMOUNT);
         Set<StripsAction> effects = new HashSet<>();
         effects.add(deposit);
         return effects;
     }
 
     @Override
-    public long computeCostFactor()
+    public long computeDuration(GameState state)
     {
-        return (long) getGatherFrom().getDistanceToTownHall();
+        return state.getProblem()
+                    .getGatherDuration(getGatherFrom().getSlot());
     }
 
+    /**
+     * @return A gather from every resource, or a {@link Trip} to every
+     * resource if the problem plans in trips.
+     */
     public static Set<StripsAction> allPossibleGathers(Unit unit,
                                                        GameState state)
     {
+        if (state.getProblem().usesTrips())
+            return Trip.allPossibleTrips(unit, state);
         return state.getResourceTracker()
                     .getResources()
                     .stream()
@@ -78,6 +100,19 @@ public class Gather implements StripsAction
         return ActionType.COMPOUNDGATHER;
     }
 
+    // A trip is not the gather that starts it
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        Gather gather = (Gather) o;
+        return getGatherer().equals(gather.getGatherer())
+                && getGatherFrom().equals(gather.getGatherFrom());
+    }
+
     @Override
     public int hashCode()
     {
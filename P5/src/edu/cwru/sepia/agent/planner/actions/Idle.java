@@ -9,8 +9,6 @@ import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
 
-import static edu.cwru.sepia.agent.planner.actions.StripsEnum.IDLE;
-
 public class Idle implements StripsAction
 {
     private final Unit unit;
@@ -20,21 +18,29 @@ public class Idle implements StripsAction
         this.unit = unit;
     }
 
+    // Any unit can wait, except a peasant that still has to deposit
     @Override
     public boolean preconditionsMet(GameState state)
     {
-        return state.getUnitTracker().containsValue(IDLE);
+        return state.getCargo(getUnit().getId()) == GameState.NONE;
     }
 
     @Override
     public GameState apply(GameState state)
     {
         GameState applied = state.copy();
-        applied.idle(getUnit());
+        execute(applied);
         applied.getCreationActions().getActions().add(this);
+        applied.evaluate();
         return applied;
     }
 
+    @Override
+    public void execute(GameState state)
+    {
+        state.idle(getUnit());
+    }
+
     @Override
     public Set<StripsAction> effects(GameState state)
     {
@@ -50,9 +56,9 @@ public class Idle implements StripsAction
     }
 
     @Override
-    public long computeCostFactor()
+    public long computeDuration(GameState state)
     {
-        return 2;
+        return 0;
     }
 
     @Override
@@ -67,6 +73,16 @@ public class Idle implements StripsAction
         return null;
     }
 
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        return getUnit().equals(((Idle) o).getUnit());
+    }
+
     @Override
     public int hashCode()
     {
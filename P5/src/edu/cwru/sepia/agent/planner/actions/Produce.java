@@ -3,19 +3,21 @@ package edu.cwru.sepia.agent.planner.actions;
 import edu.cwru.sepia.action.Action;
 import edu.cwru.sepia.action.ActionType;
 import edu.cwru.sepia.agent.planner.GameState;
+import edu.cwru.sepia.agent.planner.GameState.Problem;
+import edu.cwru.sepia.agent.planner.GameState.Resource;
+import edu.cwru.sepia.environment.model.state.ResourceType;
 
-import java.util.HashSet;
-import java.util.Objects;
-import java.util.Set;
+import java.util.*;
 
 import static edu.cwru.sepia.agent.planner.GameState.Unit;
-import static edu.cwru.sepia.agent.planner.actions.StripsEnum.IDLE;
 import static edu.cwru.sepia.agent.planner.actions.StripsEnum.PRODUCE;
 import static edu.cwru.sepia.environment.model.state.ResourceType.GOLD;
 import static edu.cwru.sepia.environment.model.state.ResourceType.WOOD;
 
 public class Produce implements StripsAction
 {
+    private static final ResourceType[] TYPES = {GOLD, WOOD};
+
     private final Unit producer;
     private final int goldCost;
     private final int woodCost;
@@ -31,12 +33,10 @@ public class Produce implements StripsAction
     public boolean preconditionsMet(GameState state)
     {
         boolean scheduled =
-                state.getUnitTracker().containsAnyValue(PRODUCE, IDLE);
+                getProducer().getValidActions().contains(PRODUCE);
         boolean shouldConsider = state.considerBuildingPeasants();
-        boolean enoughGold;
-        enoughGold = state.getResourceTracker().hasEnough(GOLD, getGoldCost());
-        boolean enoughWood;
-        enoughWood = state.getResourceTracker().hasEnough(WOOD, getWoodCost());
+        boolean enoughGold = state.getGold() >= getGoldCost();
+        boolean enoughWood = state.getWood() >= getWoodCost();
         return scheduled && shouldConsider && enoughGold && enoughWood;
     }
 
@@ -44,11 +44,18 @@ public class Produce implements StripsAction
     public GameState apply(GameState state)
     {
         GameState applied = state.copy();
-        applied.produce(getProducer(), getGoldCost(), getWoodCost());
+        execute(applied);
         applied.getCreationActions().getActions().add(this);
+        applied.evaluate();
         return applied;
     }
 
+    @Override
+    public void execute(GameState state)
+    {
+        state.produce(getProducer(), getGoldCost(), getWoodCost());
+    }
+
     @Override
     public Set<StripsAction> effects(GameState state)
     {
@@ -62,9 +69,139 @@ public class Produce implements StripsAction
     }
 
     @Override
-    public long computeCostFactor()
+    public long computeDuration(GameState state)
+    {
+        return state.getProblem().getProduceDuration();
+    }
+
+    /**
+     * Whether another peasant can shorten the plan from this state. The
+     * current peasants alone can reach the goal in L0 steps, each making
+     * one {@link Trip} a step to the resources that hold the most. None of
+     * those steps lasts longer than the slowest gather plus the slowest
+     * deposit of the resources used, so that plan takes at most U game
+     * steps.
+     * <p>
+     * A trip takes at least tau, the quickest trip, and the town hall
+     * produces one peasant at a time, each taking P. So a plan that
+     * produces m peasants, the first now, makes at most
+     * (p * T + (T - P) + (T - 2P) + ... + (T - mP)) / tau trips in T game
+     * steps. It needs at least as many trips as it takes to bring the
+     * missing gold and wood plus what the m peasants cost. If no m fits in
+     * U - 1, a plan that never produces again is as quick as any, and the
+     * production can be pruned.
+     * <p>
+     * This holds when the cost of a plan is its duration, and with every
+     * duration 1 when it is its number of steps. Without trips a peasant
+     * may be carrying, so nothing is pruned.
+     *
+     * @return False if producing now cannot make the plan quicker.
+     */
+    public boolean paysOff(GameState state)
+    {
+        if (!state.getProblem().usesTrips())
+            return true;
+        int peasants = state.getUnitCount() - 1;
+        Problem problem = state.getProblem();
+        int needGold = problem.getRequired(GOLD) - state.getGold();
+        int needWood = problem.getRequired(WOOD) - state.getWood();
+        int trips = 0;
+        long slowestGather = 0;
+        long slowestDeposit = 0;
+        for (ResourceType type : TYPES)
+        {
+            // Trips to the resources of the type that hold the most, in
+            // order, until they bring what is missing
+            int amount = type == GOLD ? needGold : needWood;
+            int[] slots = problem.getResourceSlots(type);
+            int slot = GameState.NONE;
+            while (amount > 0)
+            {
+                slot = nextLargest(state, slots, slot);
+                // Production only spends, so it cannot reach what the
+                // peasants can't
+                if (slot == GameState.NONE || state.getRemaining(slot) <= 0)
+                    return false;
+                int taken = Math.min(amount, state.getRemaining(slot));
+                trips += loads(taken);
+                amount -= taken;
+                slowestGather = Math.max(slowestGather,
+                                         problem.getGatherDuration(slot));
+                slowestDeposit = Math.max(slowestDeposit,
+                                          problem.getDepositDuration(slot));
+            }
+        }
+        long produce = state.getProblem().getProduceDuration();
+        long tau = quickestTrip(state);
+        if (peasants == 0 || produce <= 0 || tau <= 0)
+            return true;
+        long steps = ((long) trips + peasants - 1) / peasants;
+        long time = steps * (slowestGather + slowestDeposit) - 1;
+        if (time < 0)
+            return false;
+        // Up to the first m here, every peasant makes at least as many trips
+        // as it costs, so only the m from there on can tip the balance
+        long cost = loads(getGoldCost()) + loads(getWoodCost());
+        long last = Math.max(1, time / produce);
+        for (long m = Math.max(1, (time - cost * tau) / produce); m <= last;
+             m++)
+        {
+            long working = Math.min(m, time / produce);
+            long capacity = peasants * time + working * time
+                    - produce * working * (working + 1) / 2;
+            long needed = loads(needGold + m * getGoldCost())
+                    + loads(needWood + m * getWoodCost());
+            if (capacity >= needed * tau)
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * The resource that follows the given one when they are ordered by what
+     * they hold, most first, and then by slot, or NONE after the last. NONE
+     * as the given one gives the first. Picking them one at a time this way
+     * needs no sorted copy; there are only a few resources of a type.
+     */
+    private static int nextLargest(GameState state, int[] slots, int after)
+    {
+        int next = GameState.NONE;
+        for (int slot : slots)
+            if (comesBefore(state, after, slot)
+                    && (next == GameState.NONE
+                        || comesBefore(state, slot, next)))
+                next = slot;
+        return next;
+    }
+
+    private static boolean comesBefore(GameState state, int a, int b)
+    {
+        if (a == GameState.NONE)
+            return true;
+        int remainingA = state.getRemaining(a);
+        int remainingB = state.getRemaining(b);
+        return remainingA > remainingB || remainingA == remainingB && a < b;
+    }
+
+    // The quickest trip to a resource that holds anything
+    private static long quickestTrip(GameState state)
+    {
+        Problem problem = state.getProblem();
+        long quickest = Long.MAX_VALUE;
+        for (Resource resource : problem.getResources())
+        {
+            int slot = resource.getSlot();
+            if (state.getRemaining(slot) > 0)
+                quickest = Math.min(quickest,
+                                    problem.getGatherDuration(slot)
+                                            + problem.getDepositDuration(slot));
+        }
+        return quickest == Long.MAX_VALUE ? 0 : quickest;
+    }
+
+    private static long loads(long amount)
     {
-        return (long) 0.5;
+        return amount <= 0 ? 0 : (amount + Gather.AMOUNT - 1) / Gather.AMOUNT;
     }
 
     @Override
@@ -81,6 +218,19 @@ public class Produce implements StripsAction
         return ActionType.COMPOUNDPRODUCE;
     }
 
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        Produce produce = (Produce) o;
+        return getGoldCost() == produce.getGoldCost()
+                && getWoodCost() == produce.getWoodCost()
+                && getProducer().equals(produce.getProducer());
+    }
+
     @Override
     public int hashCode()
     {
@@ -48,14 +48,31 @@ public interface StripsAction
      */
     public GameState apply(GameState state);
 
+    /**
+     * Applies the effects of this action to the given GameState in place.
+     * All actions of a joint action are executed on the same copy of the
+     * parent state, so a joint action costs a single copy.
+     *
+     * @param state State to change.
+     */
+    public void execute(GameState state);
+
     public Set<StripsAction> effects(GameState state);
 
-    public long computeCostFactor();
+    /**
+     * @param state State the action is taken in.
+     * @return Game steps the action takes, which is what it adds to the cost
+     * of a plan.
+     */
+    public long computeDuration(GameState state);
 
     public Action getSepiaAction(int ...actionComponents);
 
     public ActionType getSepiaActionType();
 
+    @Override
+    public boolean equals(Object o);
+
     @Override
     public int hashCode();
 }
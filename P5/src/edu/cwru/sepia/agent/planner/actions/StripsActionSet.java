@@ -5,25 +5,36 @@ import edu.cwru.sepia.action.ActionType;
 import edu.cwru.sepia.agent.planner.GameState;
 
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
+/**
+ * A joint action: one action for each unit, taken in the same step.
+ */
 public class StripsActionSet implements StripsAction
 {
     private Set<StripsAction> actions;
+    private int[] slotOrder;
 
     public StripsActionSet(Set<StripsAction> actions)
     {
         this.actions = actions;
     }
 
+    /**
+     * Copies are what the search keeps for every state, and they hardly ever
+     * change, so they are held in a small copy-on-write array rather than a
+     * hash set.
+     */
     public StripsActionSet(StripsActionSet stripsActionSet)
     {
-        this(new HashSet<>(stripsActionSet.getActions()));
+        this(new CopyOnWriteArraySet<>(stripsActionSet.getActions()));
     }
 
     public StripsActionSet()
     {
-        this(new HashSet<>());
+        this(new LinkedHashSet<>());
     }
 
     public StripsActionSet copy()
@@ -31,21 +42,63 @@ public class StripsActionSet implements StripsAction
         return new StripsActionSet(this);
     }
 
+    /*
+     * Besides the preconditions of each action, a resource must hold enough
+     * for every peasant that gathers from it in the same step.
+     */
     @Override
     public boolean preconditionsMet(GameState state)
     {
-        return getActions().stream().allMatch(a -> preconditionsMet(state));
+        for (StripsAction action : getActions())
+        {
+            if (!action.preconditionsMet(state))
+                return false;
+            if (action instanceof Gather && !canServeAll((Gather) action,
+                                                        state))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean canServeAll(Gather gather, GameState state)
+    {
+        int slot = gather.getGatherFrom().getSlot();
+        int gatherers = 0;
+        for (StripsAction action : getActions())
+            if (action instanceof Gather
+                    && ((Gather) action).getGatherFrom().getSlot() == slot)
+                gatherers++;
+        return (long) (gatherers - 1) * Gather.AMOUNT
+                < state.getRemaining(slot);
+    }
+
+    /**
+     * @return True if every unit idles, in which case the joint action
+     * changes nothing.
+     */
+    public boolean isIdle()
+    {
+        return getActions().stream().allMatch(a -> a instanceof Idle);
     }
 
     @Override
     public GameState apply(GameState state)
     {
         GameState applied = state.copy();
-        for (StripsAction action : getActions())
-            applied = action.apply(applied);
+        execute(applied);
+        setSlotOrder(applied.sortPeasants());
+        applied.setCreationActions(this);
+        applied.evaluate();
         return applied;
     }
 
+    @Override
+    public void execute(GameState state)
+    {
+        for (StripsAction action : getActions())
+            action.execute(state);
+    }
+
     @Override
     public Set<StripsAction> effects(GameState state)
     {
@@ -56,12 +109,58 @@ public class StripsActionSet implements StripsAction
         return effects;
     }
 
+    /**
+     * Units act in parallel and the next step only starts when every action
+     * of this one is done, so a step lasts as long as its slowest action.
+     * The {@link edu.cwru.sepia.agent.planner.PEAgent} carries out trips as
+     * their gathers, alongside the other actions, and then their deposits,
+     * so the slowest of those deposits is added.
+     */
     @Override
-    public long computeCostFactor()
+    public long computeDuration(GameState state)
     {
-        return getActions().stream()
-                           .map(StripsAction::computeCostFactor)
-                           .reduce((long) 0, Math::multiplyExact);
+        return computeActionsDuration(state) + computeDepositsDuration(state);
+    }
+
+    /**
+     * @return Duration of the slowest action, counting a trip as its gather.
+     */
+    public long computeActionsDuration(GameState state)
+    {
+        long slowest = 0;
+        for (StripsAction action : getActions())
+        {
+            if (action instanceof Trip)
+            {
+                int slot = ((Trip) action).getGatherFrom().getSlot();
+                slowest = Math.max(slowest,
+                                   state.getProblem().getGatherDuration(slot));
+            }
+            else
+            {
+                slowest = Math.max(slowest, action.computeDuration(state));
+            }
+        }
+        return slowest;
+    }
+
+    /**
+     * @return Duration of the slowest deposit that ends a trip, or 0 if
+     * there are no trips.
+     */
+    public long computeDepositsDuration(GameState state)
+    {
+        long slowest = 0;
+        for (StripsAction action : getActions())
+        {
+            if (action instanceof Trip)
+            {
+                int slot = ((Trip) action).getGatherFrom().getSlot();
+                slowest = Math.max(slowest,
+                                   state.getProblem().getDepositDuration(slot));
+            }
+        }
+        return slowest;
     }
 
     @Override
@@ -86,4 +185,23 @@ public class StripsActionSet implements StripsAction
     {
         return actions;
     }
+
+    /**
+     * The actions of this set refer to the unit slots of the state it was
+     * applied to. Peasants are put back in canonical order afterwards, so
+     * the units of the resulting state may sit in other slots.
+     *
+     * @return For each slot of the resulting state, the slot the unit had
+     * in the state this set was applied to, or null if no unit moved. A slot
+     * past the units of that state is a peasant this set produced.
+     */
+    public int[] getSlotOrder()
+    {
+        return slotOrder;
+    }
+
+    public void setSlotOrder(int[] slotOrder)
+    {
+        this.slotOrder = slotOrder;
+    }
 }
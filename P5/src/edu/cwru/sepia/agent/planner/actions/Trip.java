@@ -0,0 +1,70 @@
+package edu.cwru.sepia.agent.planner.actions;
+
+import edu.cwru.sepia.agent.planner.GameState;
+import edu.cwru.sepia.agent.planner.GameState.Resource;
+import edu.cwru.sepia.agent.planner.GameState.Unit;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A whole round trip to a resource: a {@link Gather} followed by the
+ * {@link Deposit} of what was gathered. Once a peasant has gathered it can
+ * only deposit, so splitting the trip in two steps doubles the depth of the
+ * search without any choice in between. A trip leaves the peasant as a
+ * deposit does, so the same actions follow it.
+ * <p>
+ * It is a Gather for everything that looks at the resource, such as the
+ * joint preconditions and partial-order reduction. The {@link
+ * edu.cwru.sepia.agent.planner.PEAgent} issues the SEPIA gather and then
+ * the deposit.
+ */
+public class Trip extends Gather
+{
+    public Trip(Unit gatherer, Resource gatherFrom)
+    {
+        super(gatherer, gatherFrom);
+    }
+
+    @Override
+    public void execute(GameState state)
+    {
+        super.execute(state);
+        getDeposit().execute(state);
+    }
+
+    @Override
+    public Set<StripsAction> effects(GameState state)
+    {
+        return getDeposit().effects(state);
+    }
+
+    /**
+     * @return The duration of the gather plus that of the deposit.
+     */
+    @Override
+    public long computeDuration(GameState state)
+    {
+        int slot = getGatherFrom().getSlot();
+        return state.getProblem().getGatherDuration(slot)
+                + state.getProblem().getDepositDuration(slot);
+    }
+
+    /**
+     * @return The deposit that ends this trip.
+     */
+    public Deposit getDeposit()
+    {
+        return new Deposit(getGatherer(), AMOUNT);
+    }
+
+    public static Set<StripsAction> allPossibleTrips(Unit unit,
+                                                     GameState state)
+    {
+        return state.getResourceTracker()
+                    .getResources()
+                    .stream()
+                    .map(r -> new Trip(unit, r))
+                    .collect(Collectors.toSet());
+    }
+}